@@ -1,19 +1,35 @@
 package com.upgrad.quora.api.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.upgrad.quora.api.model.*;
 import com.upgrad.quora.service.business.AnswerService;
 import com.upgrad.quora.service.business.CommonService;
+import com.upgrad.quora.service.business.ListingVersions;
+import com.upgrad.quora.service.business.StreamingPermits;
+import com.upgrad.quora.service.common.Page;
+import com.upgrad.quora.service.common.VersionTag;
 import com.upgrad.quora.service.entity.AnswerEntity;
 import com.upgrad.quora.service.entity.UserAuthEntity;
 import com.upgrad.quora.service.exception.AnswerNotFoundException;
 import com.upgrad.quora.service.exception.AuthorizationFailedException;
+import com.upgrad.quora.service.exception.InvalidPaginationException;
 import com.upgrad.quora.service.exception.InvalidQuestionException;
+import com.upgrad.quora.service.exception.PreconditionFailedException;
+import com.upgrad.quora.service.exception.ServiceBusyException;
+import com.upgrad.quora.service.model.AnswerSearchHit;
+import com.upgrad.quora.service.model.AnswerSummary;
+import com.upgrad.quora.service.model.QuestionSnapshot;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
 import java.util.List;
@@ -29,6 +45,15 @@ public class AnswerController {
   @Autowired
   private CommonService commonService;
 
+  @Autowired
+  private ListingVersions listingVersions;
+
+  @Autowired
+  private ObjectMapper objectMapper;
+
+  @Autowired
+  private StreamingPermits streamingPermits;
+
   /**
    * This method takes question uuid,  authorization string, and answer request object as parameter,
    * validates the question id and the user and then creates an answer for a particular question.
@@ -56,63 +81,164 @@ public class AnswerController {
     AnswerEntity answer = answerService.createAnswer(userAuthTokenEntity, answerEntity, questionUuid);
 
     AnswerResponse answerResponse = new AnswerResponse().id(answerEntity.getUuid()).status("Answer Created");
-    return new ResponseEntity<AnswerResponse>(answerResponse, HttpStatus.OK);
+    HttpHeaders headers = new HttpHeaders();
+    headers.setETag(VersionTag.of(answer.getVersion()));
+    return new ResponseEntity<AnswerResponse>(answerResponse, headers, HttpStatus.OK);
 
   }
 
   /**
-   * This method takes the question ID and auth token as a request and returns the list of answers associated with the question.
+   * This method takes the question ID and auth token as a request and returns a page of the answers associated with
+   * the question, newest first. The token for the following page is returned in the next-page-token response header.
+   * The response carries a weak ETag of the answer listing, a request sending it back in If-None-Match gets
+   * a 304 without a query until an answer of the question or the question itself changes.
    *
    * @param questionID - question ID for the question for which the answers are to be fetched
    * @param authorization - authorization header with the accessToken
-   * @return - List of type AnswerDetailsResponse with all the answers
+   * @param pageToken - next-page-token of the previous page, omitted for the first page
+   * @param limit - number of answers per page, capped by the server
+   * @param ifNoneMatch - ETag of a previous response, if any
+   * @return - List of type AnswerDetailsResponse with the answers of the page
    * @throws AuthorizationFailedException - throws exception if the accessToken provided is not valid
    * @throws InvalidQuestionException - throws exception if the Provided QuestionID Not Present in DB
+   * @throws InvalidPaginationException - throws exception if the page token or limit is invalid
    */
   @RequestMapping(method = RequestMethod.GET, value = "/answer/all/{questionId}", produces =
           MediaType.APPLICATION_JSON_UTF8_VALUE)
   public ResponseEntity<List<AnswerDetailsResponse>> getAllAnswer(@PathVariable("questionId") String questionID,
-                                                                  @RequestHeader("authorization") final String authorization)
-          throws AuthorizationFailedException, InvalidQuestionException {
+                                                                  @RequestHeader("authorization") final String authorization,
+                                                                  @RequestParam(value = "pageToken", required = false) final String pageToken,
+                                                                  @RequestParam(value = "limit", required = false) final Integer limit,
+                                                                  @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) final String ifNoneMatch)
+          throws AuthorizationFailedException, InvalidQuestionException, InvalidPaginationException {
 
     UserAuthEntity userAuthEntity = commonService.authorizeUser(authorization);
-    List<AnswerEntity> allAnswer = answerService.getAllAnswer(questionID);
-    StringBuilder answerContent = new StringBuilder();
+    //Take the tag before reading the rows, so that it is never newer than them
+    String eTag = listingVersions.answersTag(questionID);
+    if (listingVersions.answersNotModified(ifNoneMatch, eTag)) {
+      return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+    }
+    Page<AnswerSummary> page = answerService.getAnswersPage(questionID, pageToken, limit);
     List <AnswerDetailsResponse> answerDetailsResponseList = new ArrayList<AnswerDetailsResponse>();
-    for(AnswerEntity answerEntity:allAnswer){
+    for(AnswerSummary answer:page.getItems()){
       AnswerDetailsResponse answerDetailsResponse =
-              new AnswerDetailsResponse().id(answerEntity.getUuid()).answerContent(answerEntity.getAns()).questionContent(answerEntity.getQuestion().getContent());
+              new AnswerDetailsResponse().id(answer.getUuid()).answerContent(answer.getAns()).questionContent(answer.getQuestionContent());
       answerDetailsResponseList.add(answerDetailsResponse);
     }
-    return new ResponseEntity<List<AnswerDetailsResponse>>(answerDetailsResponseList, HttpStatus.OK);
+    HttpHeaders headers = new HttpHeaders();
+    headers.setETag(eTag);
+    if (page.getNextPageToken() != null) {
+      headers.add("next-page-token", page.getNextPageToken());
+    }
+    return new ResponseEntity<List<AnswerDetailsResponse>>(answerDetailsResponseList, headers, HttpStatus.OK);
 
   }
 
+  /**
+   * This method takes a search text and auth token as a request and returns a page of the matching answers,
+   * most relevant first, from the in-memory index of the server. The token for the following page is returned
+   * in the next-page-token response header.
+   *
+   * @param query - search text, the words are matched independently of each other
+   * @param pageToken - next-page-token of the previous page, omitted for the first page
+   * @param limit - number of answers per page, capped by the server
+   * @param authorization - authorization header with the accessToken
+   * @return - List of type AnswerDetailsResponse with the matching answers of the page
+   * @throws AuthorizationFailedException - throws exception if the accessToken provided is not valid
+   * @throws InvalidPaginationException - throws exception if the page token or limit is invalid
+   * @throws ServiceBusyException - throws exception if the in-memory index is disabled on the server
+   */
+  @RequestMapping(method = RequestMethod.GET, value = "/answer/search", produces =
+          MediaType.APPLICATION_JSON_UTF8_VALUE)
+  public ResponseEntity<List<AnswerDetailsResponse>> searchAnswers(@RequestParam("q") final String query,
+                                                                   @RequestParam(value = "pageToken", required = false) final String pageToken,
+                                                                   @RequestParam(value = "limit", required = false) final Integer limit,
+                                                                   @RequestHeader("authorization") final String authorization)
+          throws AuthorizationFailedException, InvalidPaginationException, ServiceBusyException {
+
+    commonService.authorizeUser(authorization);
+    Page<AnswerSearchHit> page = answerService.searchAnswers(query, pageToken, limit);
+    List <AnswerDetailsResponse> answerDetailsResponseList = new ArrayList<AnswerDetailsResponse>();
+    for(AnswerSearchHit hit:page.getItems()){
+      answerDetailsResponseList.add(new AnswerDetailsResponse().id(hit.getUuid())
+              .answerContent(hit.getAns()).questionContent(hit.getQuestionContent()));
+    }
+    HttpHeaders headers = new HttpHeaders();
+    if (page.getNextPageToken() != null) {
+      headers.add("next-page-token", page.getNextPageToken());
+    }
+    return new ResponseEntity<List<AnswerDetailsResponse>>(answerDetailsResponseList, headers, HttpStatus.OK);
+  }
+
+  /**
+   * This method takes a question ID and auth token as a request and streams all the answers of the question.
+   * The answers are written to the response page by page as they are read from the database, so memory use stays flat.
+   *
+   * @param questionID - uuid of the question for which Fetch all Answers
+   * @param authorization - authorization header with the accessToken
+   * @return - JSON array of AnswerDetailsResponse written while the answers are read
+   * @throws AuthorizationFailedException - throws exception if the accessToken provided is not valid
+   * @throws InvalidQuestionException - throws exception if the Provided QuestionID Not Present in DB
+   * @throws ServiceBusyException - throws exception if the maximum number of streams is already being written
+   */
+  @RequestMapping(method = RequestMethod.GET, value = "/answer/all/{questionId}", params = "stream=true", produces =
+          MediaType.APPLICATION_JSON_UTF8_VALUE)
+  public ResponseEntity<StreamingResponseBody> streamAllAnswer(@PathVariable("questionId") String questionID,
+                                                               @RequestHeader("authorization") final String authorization)
+          throws AuthorizationFailedException, InvalidQuestionException, ServiceBusyException {
+
+    //Authorize and check the question before anything is written
+    commonService.authorizeUser(authorization);
+    QuestionSnapshot question = answerService.getQuestionForAnswers(questionID);
+    streamingPermits.acquire();
+
+    StreamingResponseBody body = outputStream -> {
+      try (JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+        generator.writeStartArray();
+        answerService.forEachAnswer(question, answer -> {
+          try {
+            generator.writeObject(new AnswerDetailsResponse().id(answer.getUuid())
+                    .answerContent(answer.getAns()).questionContent(answer.getQuestionContent()));
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        });
+        generator.writeEndArray();
+      } finally {
+        streamingPermits.release();
+      }
+    };
+    return new ResponseEntity<StreamingResponseBody>(body, HttpStatus.OK);
+  }
+
   /**
    * This method takes the answer ID, content and auth token as a request, updates the answer and returns the status.
+   * With an If-Match header the update only applies if the answer is still at one of the versions it names.
    *
    * @param answerEditRequest - AnswerEditRequest containing the content to be edited
    * @param answerID - uuid of the answer that is to be edited
    * @param authorization - authorization header containing the accessToken
-   * @return - AnswerEditResponse
+   * @param ifMatch - ETag of the version the edit is based on, if any
+   * @return - AnswerEditResponse with the ETag of the new version
    * @throws AuthorizationFailedException - thrown if the user is not authorized to edit the question
    * @throws AnswerNotFoundException - thrown if the answer requested for the edit is not present in DB
+   * @throws PreconditionFailedException - thrown if the answer was changed since the version in If-Match
    */
   @RequestMapping(method = RequestMethod.PUT, value = "/answer/edit/{answerId}",
           consumes = MediaType.APPLICATION_JSON_UTF8_VALUE, produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
   public ResponseEntity<AnswerEditResponse> editAnswer(final AnswerEditRequest answerEditRequest, @PathVariable("answerId") String answerID,
-                                                       @RequestHeader("authorization") final String authorization)
-          throws AuthorizationFailedException, AnswerNotFoundException {
+                                                       @RequestHeader("authorization") final String authorization,
+                                                       @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) final String ifMatch)
+          throws AuthorizationFailedException, AnswerNotFoundException, PreconditionFailedException {
 
     UserAuthEntity userAuthEntity = commonService.authorizeUser(authorization);
-    AnswerEntity answerEntity = new AnswerEntity();
-    answerEntity.setUuid(answerID);
-    answerEntity.setAns(answerEditRequest.getContent());
 
-    AnswerEntity updateAnswer = answerService.updateAnswer(answerEntity, userAuthEntity);
-    AnswerEditResponse answerEditResponse = new AnswerEditResponse().id(updateAnswer.getUuid()).status("ANSWER EDITED");
+    int version = answerService.updateAnswer(answerID, answerEditRequest.getContent(), userAuthEntity, ifMatch);
+    AnswerEditResponse answerEditResponse = new AnswerEditResponse().id(answerID).status("ANSWER EDITED");
 
-    return new ResponseEntity<AnswerEditResponse>(answerEditResponse,HttpStatus.CREATED);
+    HttpHeaders headers = new HttpHeaders();
+    headers.setETag(VersionTag.of(version));
+    return new ResponseEntity<AnswerEditResponse>(answerEditResponse,headers,HttpStatus.CREATED);
   }
 
   /**
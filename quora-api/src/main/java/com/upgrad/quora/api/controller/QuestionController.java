@@ -1,21 +1,41 @@
 package com.upgrad.quora.api.controller;
 
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.upgrad.quora.api.model.*;
 import com.upgrad.quora.service.business.CommonService;
+import com.upgrad.quora.service.business.ListingVersions;
 import com.upgrad.quora.service.business.QuestionService;
+import com.upgrad.quora.service.business.StreamingPermits;
+import com.upgrad.quora.service.common.Page;
+import com.upgrad.quora.service.common.VersionTag;
 import com.upgrad.quora.service.entity.QuestionEntity;
 import com.upgrad.quora.service.entity.UserAuthEntity;
 import com.upgrad.quora.service.entity.UserEntity;
 import com.upgrad.quora.service.exception.AuthorizationFailedException;
+import com.upgrad.quora.service.exception.DuplicateQuestionException;
+import com.upgrad.quora.service.exception.InvalidBatchException;
+import com.upgrad.quora.service.exception.InvalidPaginationException;
 import com.upgrad.quora.service.exception.InvalidQuestionException;
+import com.upgrad.quora.service.exception.PreconditionFailedException;
+import com.upgrad.quora.service.exception.ServiceBusyException;
 import com.upgrad.quora.service.exception.UserNotFoundException;
+import com.upgrad.quora.service.model.DuplicateQuestion;
+import com.upgrad.quora.service.model.QuestionBatchResult;
+import com.upgrad.quora.service.model.QuestionSearchHit;
+import com.upgrad.quora.service.model.QuestionSnapshot;
+import com.upgrad.quora.service.model.QuestionSummary;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
 import java.util.List;
@@ -30,18 +50,30 @@ public class QuestionController {
     @Autowired
     private CommonService commonService;
 
+    @Autowired
+    private ListingVersions listingVersions;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private StreamingPermits streamingPermits;
+
     /**
      * This method takes the question content and auth token as a request, creates the answer and returns the status.
+     * The existing questions with nearly the same content are returned along, as likely duplicates.
      *
      * @param request - QuestionRequest object
      * @param authHeader - authorization header containing the accessToken
-     * @return QuestionResponse - with uuid and status
+     * @return QuestionResponse - with uuid, status and likely duplicates, and the ETag of the question
      * @throws AuthorizationFailedException - thrown when user is not authorized to create a question.
+     * @throws DuplicateQuestionException - thrown when rejecting duplicates is enabled and the question is one.
      */
     @RequestMapping(path = "/question/create", method = RequestMethod.POST, consumes = MediaType.APPLICATION_JSON_VALUE,
             produces = MediaType.APPLICATION_JSON_VALUE)
     public ResponseEntity<QuestionResponse> createQuestion(final QuestionRequest request,
-                                                           @RequestHeader("authorization") final String authHeader) throws AuthorizationFailedException {
+                                                           @RequestHeader("authorization") final String authHeader)
+            throws AuthorizationFailedException, DuplicateQuestionException {
 
         QuestionEntity questionEntity = new QuestionEntity();
 
@@ -57,6 +89,9 @@ public class QuestionController {
         questionEntity.setDate(ZonedDateTime.now());
         questionEntity.setUserEntity(userEntity);
 
+        //Look for likely duplicates before the question itself is indexed
+        List<DuplicateQuestion> duplicates = questionService.findDuplicateQuestions(request.getContent());
+
         //Persist the question in db
         QuestionEntity persistedQuestion = questionService.createQuestion(questionEntity);
 
@@ -64,89 +99,248 @@ public class QuestionController {
         QuestionResponse response = new QuestionResponse();
         response.id(persistedQuestion.getUuid());
         response.status("QUESTION CREATED");
+        response.duplicates(new ArrayList<>());
+        for (DuplicateQuestion duplicate : duplicates) {
+            response.addDuplicatesItem(new QuestionDuplicateResponse().id(duplicate.getUuid())
+                    .content(duplicate.getContent()).distance(duplicate.getDistance()));
+        }
+
+        //The ETag of the first version, to be sent in If-Match by edits
+        HttpHeaders headers = new HttpHeaders();
+        headers.setETag(VersionTag.of(persistedQuestion.getVersion()));
+        return new ResponseEntity<QuestionResponse>(response, headers, HttpStatus.CREATED);
+    }
+
+    /**
+     * This method takes a list of questions and the auth token as a request, creates the questions in one transaction
+     * and returns one result per question, in request order.
+     *
+     * @param requests - QuestionRequest objects
+     * @param authHeader - authorization header containing the accessToken
+     * @return List of QuestionBatchItemResponse - with uuid and status, or the error of a rejected question
+     * @throws AuthorizationFailedException - thrown when user is not authorized to create a question.
+     * @throws InvalidBatchException - thrown when the list is empty or longer than the server accepts.
+     */
+    @RequestMapping(path = "/question/create/batch", method = RequestMethod.POST,
+            consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<QuestionBatchItemResponse>> createQuestions(@RequestBody final List<QuestionRequest> requests,
+                                                                          @RequestHeader("authorization") final String authHeader)
+            throws AuthorizationFailedException, InvalidBatchException {
+
+        UserAuthEntity userAuthTokenEntity = commonService.authorizeUser(authHeader);
 
-        return new ResponseEntity<QuestionResponse>(response, HttpStatus.CREATED);
+        List<String> contents = new ArrayList<>(requests.size());
+        for (QuestionRequest request : requests) {
+            contents.add(request == null ? null : request.getContent());
+        }
+        List<QuestionBatchResult> results = questionService.createQuestions(userAuthTokenEntity.getUserEntity(), contents);
+
+        List<QuestionBatchItemResponse> response = new ArrayList<>(results.size());
+        for (int i = 0; i < results.size(); i++) {
+            QuestionBatchResult result = results.get(i);
+            response.add(result.isCreated()
+                    ? new QuestionBatchItemResponse().index(i).id(result.getUuid()).status("QUESTION CREATED")
+                    : new QuestionBatchItemResponse().index(i).status("QUESTION REJECTED")
+                    .code(result.getErrorCode()).message(result.getErrorMessage()));
+        }
+        return new ResponseEntity<List<QuestionBatchItemResponse>>(response, HttpStatus.OK);
     }
 
 
     /**
-     * This method takes the auth token as a request and returns the list of all the questions.
+     * This method takes the auth token as a request and returns a page of the questions, newest first.
+     * The token for the following page is returned in the next-page-token response header, which is absent on the last page.
+     * The response carries a weak ETag of the question listing, a request sending it back in If-None-Match gets
+     * a 304 without a query until a question changes.
      *
      * @param authHeader - authorization header with the accessToken
-     * @return - List of type QuestionResponse with all the questions
+     * @param pageToken - next-page-token of the previous page, omitted for the first page
+     * @param limit - number of questions per page, capped by the server
+     * @param ifNoneMatch - ETag of a previous response, if any
+     * @return - List of type QuestionResponse with the questions of the page
      * @throws AuthorizationFailedException - throws exception if the accessToken provided is not valid
+     * @throws InvalidPaginationException - throws exception if the page token or limit is invalid
      */
 
     @RequestMapping(path = "/question/all", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<List<QuestionDetailsResponse>> getAllQuestions(@RequestHeader("authorization") final String authHeader)
-            throws AuthorizationFailedException {
+    public ResponseEntity<List<QuestionDetailsResponse>> getAllQuestions(@RequestHeader("authorization") final String authHeader,
+                                                                         @RequestParam(value = "pageToken", required = false) final String pageToken,
+                                                                         @RequestParam(value = "limit", required = false) final Integer limit,
+                                                                         @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) final String ifNoneMatch)
+            throws AuthorizationFailedException, InvalidPaginationException {
 
         //Check if the accessToken is valid and present in db
         UserAuthEntity userAuthTokenEntity = commonService.authorizeUser(authHeader);
 
-        //Get all the questionEntities present in db
-        List<QuestionEntity>questionEntities = questionService.getAllQuestions();
+        //Take the tag before reading the rows, so that it is never newer than them
+        String eTag = listingVersions.questionsTag();
+        if (listingVersions.questionsNotModified(ifNoneMatch, eTag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+        }
+
+        //Get the questions of the requested page
+        Page<QuestionSummary> page = questionService.getQuestionsPage(pageToken, limit);
+        List<QuestionSummary> questions = page.getItems();
 
         //Create a QuestionResponse list
         List <QuestionDetailsResponse> responseList = new ArrayList<>();
 
-        //Iterate through questionEntities and create a corresponding questionResponse and push it to the responseList
-        for(QuestionEntity questionEntity:questionEntities){
+        //Iterate through questions and create a corresponding questionResponse and push it to the responseList
+        for(QuestionSummary question:questions){
             QuestionDetailsResponse response = new QuestionDetailsResponse();
-            response.id(questionEntity.getUuid());
-            response.content(questionEntity.getContent());
+            response.id(question.getUuid());
+            response.content(question.getContent());
+            response.answerCount(question.getAnswerCount());
             responseList.add(response);
         }
 
-        return new ResponseEntity<List<QuestionDetailsResponse>>(responseList,HttpStatus.OK);
+        HttpHeaders headers = new HttpHeaders();
+        headers.setETag(eTag);
+        if (page.getNextPageToken() != null) {
+            headers.add("next-page-token", page.getNextPageToken());
+        }
+        return new ResponseEntity<List<QuestionDetailsResponse>>(responseList,headers,HttpStatus.OK);
+    }
+
+    /**
+     * This method takes the auth token as a request and returns the newest questions, newest first.
+     * They are served from memory without a database query.
+     *
+     * @param authHeader - authorization header with the accessToken
+     * @param limit - number of questions, capped by the server
+     * @return - List of type QuestionDetailsResponse with the newest questions
+     * @throws AuthorizationFailedException - throws exception if the accessToken provided is not valid
+     * @throws InvalidPaginationException - throws exception if the limit is invalid
+     */
+    @RequestMapping(path = "/question/latest", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<QuestionDetailsResponse>> getLatestQuestions(@RequestHeader("authorization") final String authHeader,
+                                                                            @RequestParam(value = "limit", required = false) final Integer limit)
+            throws AuthorizationFailedException, InvalidPaginationException {
+
+        commonService.authorizeUser(authHeader);
+
+        List<QuestionDetailsResponse> responseList = new ArrayList<>();
+        for (QuestionSnapshot question : questionService.getLatestQuestions(limit)) {
+            responseList.add(new QuestionDetailsResponse().id(question.getUuid()).content(question.getContent()));
+        }
+        return new ResponseEntity<List<QuestionDetailsResponse>>(responseList, HttpStatus.OK);
+    }
+
+    /**
+     * This method takes a search text and the auth token as a request and returns a page of the matching questions,
+     * most relevant first. The token for the following page is returned in the next-page-token response header.
+     * With source=index the search is answered from the in-memory index of the server instead of the database.
+     *
+     * @param authHeader - authorization header with the accessToken
+     * @param query - search text, words, "quoted phrases", or and -excluded words are understood
+     * @param source - database (default) or index
+     * @param pageToken - next-page-token of the previous page, omitted for the first page
+     * @param limit - number of questions per page, capped by the server
+     * @return - List of type QuestionDetailsResponse with the matching questions of the page
+     * @throws AuthorizationFailedException - throws exception if the accessToken provided is not valid
+     * @throws InvalidPaginationException - throws exception if the page token or limit is invalid
+     * @throws ServiceBusyException - throws exception if the in-memory index is disabled on the server
+     */
+
+    @RequestMapping(path = "/question/search", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<QuestionDetailsResponse>> searchQuestions(@RequestHeader("authorization") final String authHeader,
+                                                                         @RequestParam("q") final String query,
+                                                                         @RequestParam(value = "source", required = false) final String source,
+                                                                         @RequestParam(value = "pageToken", required = false) final String pageToken,
+                                                                         @RequestParam(value = "limit", required = false) final Integer limit)
+            throws AuthorizationFailedException, InvalidPaginationException, ServiceBusyException {
+
+        commonService.authorizeUser(authHeader);
+        Page<QuestionSearchHit> page = "index".equals(source)
+                ? questionService.searchQuestionsInIndex(query, pageToken, limit)
+                : questionService.searchQuestions(query, pageToken, limit);
+
+        List<QuestionDetailsResponse> responseList = new ArrayList<>();
+        for (QuestionSearchHit hit : page.getItems()) {
+            responseList.add(new QuestionDetailsResponse().id(hit.getUuid()).content(hit.getContent()));
+        }
+
+        HttpHeaders headers = new HttpHeaders();
+        if (page.getNextPageToken() != null) {
+            headers.add("next-page-token", page.getNextPageToken());
+        }
+        return new ResponseEntity<List<QuestionDetailsResponse>>(responseList, headers, HttpStatus.OK);
+    }
+
+    /**
+     * This method takes the auth token as a request and streams all the questions, newest first.
+     * The questions are written to the response page by page as they are read from the database, so memory use stays flat.
+     *
+     * @param authHeader - authorization header with the accessToken
+     * @return - JSON array of QuestionDetailsResponse written while the questions are read
+     * @throws AuthorizationFailedException - throws exception if the accessToken provided is not valid
+     * @throws ServiceBusyException - throws exception if the maximum number of streams is already being written
+     */
+
+    @RequestMapping(path = "/question/all", method = RequestMethod.GET, params = "stream=true", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamAllQuestions(@RequestHeader("authorization") final String authHeader)
+            throws AuthorizationFailedException, ServiceBusyException {
+
+        //Check if the accessToken is valid and present in db, before anything is written
+        commonService.authorizeUser(authHeader);
+        streamingPermits.acquire();
+
+        StreamingResponseBody body = outputStream -> {
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+                generator.writeStartArray();
+                questionService.forEachQuestion(question -> {
+                    try {
+                        generator.writeObject(new QuestionDetailsResponse()
+                                .id(question.getUuid()).content(question.getContent())
+                                .answerCount(question.getAnswerCount()));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                generator.writeEndArray();
+            } finally {
+                streamingPermits.release();
+            }
+        };
+        return new ResponseEntity<StreamingResponseBody>(body, HttpStatus.OK);
     }
 
     /**
      * This method takes the question ID, content and auth token as a request, edits the question and returns the status.
+     * With an If-Match header the edit only applies if the question is still at one of the versions it names.
      *
      * @param authHeader - authorization header containing the accessToken
      * @param request - QuestionEditRequest containing the content to be edited
      * @param questionUuid - uuid of the question that is to be edited
-     * @return - QuestionEditResponse
+     * @param ifMatch - ETag of the version the edit is based on, if any
+     * @return - QuestionEditResponse with the ETag of the new version
      * @throws AuthorizationFailedException - thrown if the user is not authorized to edit the question
      * @throws InvalidQuestionException - thrown if the question requested for the edit is not present in db
+     * @throws PreconditionFailedException - thrown if the question was changed since the version in If-Match
      */
 
     @RequestMapping(path = "/question/edit/{questionId}", produces = MediaType.APPLICATION_JSON_VALUE, method = RequestMethod.PUT)
     public ResponseEntity<QuestionEditResponse> editQuestion(@RequestHeader("authorization") final String authHeader,
-                                                             final QuestionEditRequest request, @PathVariable("questionId") final String questionUuid)
-            throws AuthorizationFailedException, InvalidQuestionException {
+                                                             final QuestionEditRequest request, @PathVariable("questionId") final String questionUuid,
+                                                             @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) final String ifMatch)
+            throws AuthorizationFailedException, InvalidQuestionException, PreconditionFailedException {
 
         //Check if the provided accessToken is valid and present in the db
         //if accessToken is not valid throws AuthorizationFailedException
         UserAuthEntity userAuthTokenEntity = commonService.authorizeUser(authHeader);
 
-        //Check if the question correspondent to the provided uuid present in db
-        //If the question is not present throws InvalidQuestionException
-        QuestionEntity questionEntity = questionService.getQuestionByUuid(questionUuid);
-
-        //Get the user requesting for the edit
-        UserEntity userToEdit = userAuthTokenEntity.getUserEntity();
-
-        //Get the actual question owner
-        UserEntity questionOwner = questionEntity.getUserEntity();
-
-        //Checks if the user requesting the edit and the owner of the question are same
-        //If not throws a AuthorizationFailedException
-        questionService.authorizeEdit(userToEdit,questionOwner);
-
-        //If user authorized edit the questionEntity with the provided new content
-        questionEntity.setContent(request.getContent());
-
-        //Persist the updated questionEntity
-        QuestionEntity updatedQuestion = questionService.updateQuestion(questionEntity);
+        //Edit the question if the user owns it and it is still at a version of If-Match
+        int version = questionService.editQuestion(userAuthTokenEntity.getUserEntity(), questionUuid,
+                request.getContent(), ifMatch);
 
         //Create a QuestionEditResponse
         QuestionEditResponse response = new QuestionEditResponse();
-        response.setId(updatedQuestion.getUuid());
+        response.setId(questionUuid);
         response.setStatus("QUESTION EDITED");
 
-        return new ResponseEntity<QuestionEditResponse>(response,HttpStatus.OK);
+        HttpHeaders headers = new HttpHeaders();
+        headers.setETag(VersionTag.of(version));
+        return new ResponseEntity<QuestionEditResponse>(response,headers,HttpStatus.OK);
     }
 
 
@@ -157,24 +351,35 @@ public class QuestionController {
      *
      * @param userUuid "Uuid of user who requested for all questions"
      * @param authorization Auth token of the user
-     * @return List of QuestionDetailsResponse containing question uuid and content
+     * @param pageToken next-page-token of the previous page, omitted for the first page
+     * @param limit number of questions per page, capped by the server
+     * @return List of QuestionDetailsResponse containing question uuid and content of the page
      * @throws AuthorizationFailedException Throws the error code ATH-001 if username doesn't exist,
      *    ATH-002 in case of incorrect password
      * @throws UserNotFoundException Thrown with the message code -'USR-001' and
      * message -'User with entered uuid whose question details are to be seen does not exist'
+     * @throws InvalidPaginationException Thrown if the page token or limit is invalid
      */
     @RequestMapping(method = RequestMethod.GET, path = "/question/all/{userId}", produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
-    public ResponseEntity<List<QuestionDetailsResponse>> getAllQuestionsByUser(@PathVariable("userId") final String userUuid, @RequestHeader("authorization") final String authorization) throws AuthorizationFailedException, UserNotFoundException {
+    public ResponseEntity<List<QuestionDetailsResponse>> getAllQuestionsByUser(@PathVariable("userId") final String userUuid, @RequestHeader("authorization") final String authorization,
+                                                                               @RequestParam(value = "pageToken", required = false) final String pageToken,
+                                                                               @RequestParam(value = "limit", required = false) final Integer limit)
+            throws AuthorizationFailedException, UserNotFoundException, InvalidPaginationException {
         UserAuthEntity userAuthTokenEntity = commonService.authorizeUser(authorization);
-        List<QuestionEntity> questionEntityList=questionService.getAllQuestionsByUser(userUuid);
+        Page<QuestionSummary> page = questionService.getAllQuestionsByUser(userUuid, pageToken, limit);
+        List<QuestionSummary> questionList = page.getItems();
         List<QuestionDetailsResponse> questionDetailsResponseList=new ArrayList<>();
 
-        for(int i=0;i<questionEntityList.size();i++){
-            QuestionDetailsResponse questionDetailsResponse=new QuestionDetailsResponse().id(questionEntityList.get(i).getUuid()).content(questionEntityList.get(i).getContent());
+        for(int i=0;i<questionList.size();i++){
+            QuestionDetailsResponse questionDetailsResponse=new QuestionDetailsResponse().id(questionList.get(i).getUuid()).content(questionList.get(i).getContent()).answerCount(questionList.get(i).getAnswerCount());
             questionDetailsResponseList.add(questionDetailsResponse);
         }
 
-        return new ResponseEntity<List<QuestionDetailsResponse>>(questionDetailsResponseList, HttpStatus.OK);
+        HttpHeaders headers = new HttpHeaders();
+        if (page.getNextPageToken() != null) {
+            headers.add("next-page-token", page.getNextPageToken());
+        }
+        return new ResponseEntity<List<QuestionDetailsResponse>>(questionDetailsResponseList, headers, HttpStatus.OK);
 
     }
 
@@ -197,8 +402,8 @@ public class QuestionController {
             throws AuthorizationFailedException, InvalidQuestionException {
 
         UserAuthEntity userAuthTokenEntity = commonService.authorizeUser(authorization);
-        QuestionEntity questionEntity=questionService.deleteQuestion(userAuthTokenEntity, questionUuid);
-        QuestionDeleteResponse questionDeleteResponse=new QuestionDeleteResponse().id(questionEntity.getUuid()).status("Question Deleted");
+        questionService.deleteQuestion(userAuthTokenEntity, questionUuid);
+        QuestionDeleteResponse questionDeleteResponse=new QuestionDeleteResponse().id(questionUuid).status("Question Deleted");
 
         return  new ResponseEntity<QuestionDeleteResponse>(questionDeleteResponse,HttpStatus.OK);
 
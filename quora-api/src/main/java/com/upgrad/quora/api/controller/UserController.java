@@ -4,10 +4,14 @@ import com.upgrad.quora.api.model.SigninResponse;
 import com.upgrad.quora.api.model.SignoutResponse;
 import com.upgrad.quora.api.model.SignupUserRequest;
 import com.upgrad.quora.api.model.SignupUserResponse;
+import com.upgrad.quora.api.model.UserAvailabilityResponse;
+import com.upgrad.quora.service.business.SigninRateLimiter;
 import com.upgrad.quora.service.business.UserAuthenticationService;
 import com.upgrad.quora.service.entity.UserAuthEntity;
 import com.upgrad.quora.service.entity.UserEntity;
 import com.upgrad.quora.service.exception.AuthenticationFailedException;
+import com.upgrad.quora.service.exception.RateLimitExceededException;
+import com.upgrad.quora.service.exception.ServiceBusyException;
 import com.upgrad.quora.service.exception.SignOutRestrictedException;
 import com.upgrad.quora.service.exception.SignUpRestrictedException;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -18,8 +22,11 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import javax.servlet.http.HttpServletRequest;
+
 import java.util.Base64;
 
 @RestController
@@ -28,12 +35,15 @@ public class UserController {
 
     @Autowired private UserAuthenticationService userAuthService;
 
+    @Autowired private SigninRateLimiter signinRateLimiter;
+
     /**
      * Method for signing up a new user.
      * An object of 'SignupUserRequest' is received as an argument with corresponding fields.
      *
      * @return SignupUserResponse - UUID of the new user created.
      * @throws SignUpRestrictedException - Thrown if the username of email already exists in the DB.
+     * @throws ServiceBusyException - Thrown if the password hashing pool is saturated.
      */
     @RequestMapping(
             method = RequestMethod.POST,
@@ -41,7 +51,7 @@ public class UserController {
             consumes = MediaType.APPLICATION_JSON_UTF8_VALUE,
             produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
     public ResponseEntity<SignupUserResponse> signup(SignupUserRequest signupUserRequest)
-            throws SignUpRestrictedException {
+            throws SignUpRestrictedException, ServiceBusyException {
 
         UserEntity userEntity = createNewUserEntity(signupUserRequest);
         UserEntity createdUserEntity = userAuthService.signup(userEntity);
@@ -56,21 +66,24 @@ public class UserController {
      * This method takes a authorization string as parameter, decodes and generates an access token.
      *
      * @param authorization "Basic <Base 64 Encoded username:password>"
+     * @param request Servlet request, its remote address is used for throttling
      * @return SigninResponse containing user id and a access-token.
      * @throws AuthenticationFailedException Throws the error code ATH-001 if username doesn't exist,
      * ATH-002 in case of incorrect password
+     * @throws ServiceBusyException Throws the error code GEN-002 if the password hashing pool is saturated
+     * @throws RateLimitExceededException Throws the error code ATH-003 if the username or client made too many attempts
      */
     @RequestMapping(
             method = RequestMethod.POST,
             path = "/user/signin",
             produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
     public ResponseEntity<SigninResponse> signin(
-            @RequestHeader("authorization") final String authorization)
-            throws AuthenticationFailedException {
+            @RequestHeader("authorization") final String authorization, final HttpServletRequest request)
+            throws AuthenticationFailedException, ServiceBusyException, RateLimitExceededException {
 
-        byte[] decode = Base64.getDecoder().decode(authorization.split("Basic ")[1]);
-        String decodedText = new String(decode);
-        String[] decodedArray = decodedText.split(":");
+        String[] decodedArray = decodeBasicAuthorization(authorization);
+        // Throttled outside of the signin transaction, so that shed attempts cost neither a connection nor a hash.
+        signinRateLimiter.acquire(decodedArray[0], request.getRemoteAddr());
         UserAuthEntity userAuthEntity = userAuthService.signin(decodedArray[0], decodedArray[1]);
 
         HttpHeaders headers = new HttpHeaders();
@@ -83,6 +96,18 @@ public class UserController {
         return new ResponseEntity<SigninResponse>(signinResponse, headers, HttpStatus.OK);
     }
 
+    /**
+     * Decodes the credentials of a Basic authorization header.
+     *
+     * @param authorization "Basic <Base 64 Encoded username:password>"
+     * @return String array with [0] username [1] password.
+     */
+    public static String[] decodeBasicAuthorization(final String authorization) {
+        byte[] decode = Base64.getDecoder().decode(authorization.split("Basic ")[1]);
+        String decodedText = new String(decode);
+        return decodedText.split(":");
+    }
+
     /**
      * This method takes an accessToken to validate and sign the user out.
      *
@@ -102,6 +127,29 @@ public class UserController {
         return new ResponseEntity<SignoutResponse>(signoutResponse, HttpStatus.OK);
     }
 
+    /**
+     * Method to check whether a username and/or email can still be used to sign up.
+     * Answered from memory, so it is cheap enough to call while the user is typing.
+     *
+     * @param userName Username to check.
+     * @param email Email address to check.
+     * @return UserAvailabilityResponse with the availability of each value given.
+     */
+    @RequestMapping(
+            method = RequestMethod.GET,
+            path = "/user/availability",
+            produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
+    public ResponseEntity<UserAvailabilityResponse> availability(
+            @RequestParam(value = "username", required = false) final String userName,
+            @RequestParam(value = "email", required = false) final String email) {
+        Boolean[] availability = userAuthService.checkAvailability(userName, email);
+        UserAvailabilityResponse availabilityResponse =
+                new UserAvailabilityResponse()
+                        .usernameAvailable(availability[0])
+                        .emailAvailable(availability[1]);
+        return new ResponseEntity<UserAvailabilityResponse>(availabilityResponse, HttpStatus.OK);
+    }
+
     /**
      * This method take the Sign up user request and creates a user entity.
      *
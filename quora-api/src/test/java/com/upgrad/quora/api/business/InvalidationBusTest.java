@@ -0,0 +1,67 @@
+package com.upgrad.quora.api.business;
+
+import com.upgrad.quora.service.business.InvalidationBus;
+import com.upgrad.quora.service.business.TokenDenylist;
+import com.upgrad.quora.service.entity.UserAuthEntity;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.AutowireCapableBeanFactory;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.ZonedDateTime;
+import java.util.UUID;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+
+public class InvalidationBusTest {
+
+    @Autowired
+    private InvalidationBus invalidationBus;
+
+    @Autowired
+    private TokenDenylist tokenDenylist;
+
+    @Autowired
+    private AutowireCapableBeanFactory beanFactory;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+
+    //This test case passes when a signout published by another node while this node was not listening, which this node never receives, still stops the tokens issued before it listens again from being trusted on their signature.
+    @Test
+    public void signoutPublishedBeforeListenDistrustsEarlierTokens() throws Exception {
+        InvalidationBus otherNode = new InvalidationBus();
+        beanFactory.autowireBean(otherNode);
+        UserAuthEntity session = new UserAuthEntity();
+        session.setUuid(UUID.randomUUID().toString());
+        session.setExpiresAt(ZonedDateTime.now().plusHours(1));
+
+        final long issuedAt = System.currentTimeMillis();
+        Thread.sleep(5);
+        assertTrue(tokenDenylist.isTrusted(issuedAt));
+
+        invalidationBus.stop();
+        try {
+            new TransactionTemplate(transactionManager).execute(status -> {
+                otherNode.sessionRevoked(session);
+                return null;
+            });
+        } finally {
+            invalidationBus.start();
+        }
+        for (int wait = 0; wait < 100 && tokenDenylist.isTrusted(issuedAt); wait++) {
+            Thread.sleep(100);
+        }
+        assertFalse(tokenDenylist.isRevoked(session.getUuid(), "database_user_uuid", issuedAt));
+        assertFalse(tokenDenylist.isTrusted(issuedAt));
+    }
+}
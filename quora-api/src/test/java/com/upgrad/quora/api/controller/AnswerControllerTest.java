@@ -1,6 +1,8 @@
 package com.upgrad.quora.api.controller;
 
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -9,9 +11,18 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @RunWith(SpringRunner.class)
@@ -23,6 +34,9 @@ public class AnswerControllerTest {
     @Autowired
     private MockMvc mvc;
 
+    @Autowired
+    private ObjectMapper objectMapper;
+
 
     //This test case passes when you try to create the answer but the JWT token entered does not exist in the database.
     @Test
@@ -48,6 +62,39 @@ public class AnswerControllerTest {
                 .andExpect(MockMvcResultMatchers.jsonPath("code").value("QUES-001"));
     }
 
+    //This test case passes when you search the answers in the in-memory index and find the answer of the test data along with the content of its question.
+    @Test
+    public void searchAnswers() throws Exception {
+        String accessToken = TestUsers.signUpAndSignIn(mvc);
+        mvc.perform(MockMvcRequestBuilders.get("/answer/search").param("q", "my answer").header("authorization", accessToken))
+                .andExpect(status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$[?(@.id == 'database_answer_uuid')].answerContent").value("my_answer"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[?(@.id == 'database_answer_uuid')].questionContent").value("database_question_content"));
+    }
+
+    //This test case passes when you page through the answers matching a search in the in-memory index one at a time with the next-page-token header.
+    @Test
+    public void searchAnswersByPage() throws Exception {
+        String accessToken = TestUsers.signUpAndSignIn(mvc);
+        String word = "searched" + UUID.randomUUID().toString().replace("-", "");
+        for (String answer : new String[]{"first " + word, "second " + word}) {
+            mvc.perform(MockMvcRequestBuilders.post("/question/database_question_uuid/answer/create").param("answer", answer).contentType(MediaType.APPLICATION_JSON_UTF8_VALUE).header("authorization", accessToken))
+                    .andExpect(status().isOk());
+        }
+
+        MvcResult firstPage = mvc.perform(MockMvcRequestBuilders.get("/answer/search").param("q", word).param("limit", "1").header("authorization", accessToken))
+                .andExpect(status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.length()").value(1))
+                .andExpect(MockMvcResultMatchers.header().exists("next-page-token"))
+                .andReturn();
+        String firstId = objectMapper.readTree(firstPage.getResponse().getContentAsString()).get(0).get("id").asText();
+        mvc.perform(MockMvcRequestBuilders.get("/answer/search").param("q", word).param("limit", "1").param("pageToken", firstPage.getResponse().getHeader("next-page-token")).header("authorization", accessToken))
+                .andExpect(status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.length()").value(1))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].id").value(not(firstId)))
+                .andExpect(MockMvcResultMatchers.header().doesNotExist("next-page-token"));
+    }
+
     //This test case passes when you try to edit the answer but the JWT token entered does not exist in the database.
     @Test
     public void editAnswerWithNonExistingAccessToken() throws Exception {
@@ -136,5 +183,49 @@ public class AnswerControllerTest {
                 .andExpect(MockMvcResultMatchers.jsonPath("code").value("QUES-001"));
     }
 
+    //This test case passes when you stream all the answers posted for a question with a signed in user and get the same answers, in the same order, as by paging through them.
+    @Test
+    public void streamAllAnswersToQuestion() throws Exception {
+        String accessToken = TestUsers.signUpAndSignIn(mvc);
+        String questionUuid = objectMapper.readTree(mvc.perform(MockMvcRequestBuilders.post("/question/create").param("content", "streamed_answers_question_" + UUID.randomUUID()).contentType(MediaType.APPLICATION_JSON_UTF8_VALUE).header("authorization", accessToken))
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getContentAsString()).get("id").asText();
+        for (int i = 0; i < 3; i++) {
+            mvc.perform(MockMvcRequestBuilders.post("/question/" + questionUuid + "/answer/create").param("answer", "streamed_answer_" + i).contentType(MediaType.APPLICATION_JSON_UTF8_VALUE).header("authorization", accessToken))
+                    .andExpect(status().isOk());
+        }
+
+        List<JsonNode> paged = new ArrayList<>();
+        String pageToken = null;
+        do {
+            MvcResult page = mvc.perform(pageToken == null
+                    ? MockMvcRequestBuilders.get("/answer/all/" + questionUuid).param("limit", "2").header("authorization", accessToken)
+                    : MockMvcRequestBuilders.get("/answer/all/" + questionUuid).param("limit", "2").param("pageToken", pageToken).header("authorization", accessToken))
+                    .andExpect(status().isOk())
+                    .andReturn();
+            objectMapper.readTree(page.getResponse().getContentAsString()).forEach(paged::add);
+            pageToken = page.getResponse().getHeader("next-page-token");
+        } while (pageToken != null);
+
+        MvcResult streaming = mvc.perform(MockMvcRequestBuilders.get("/answer/all/" + questionUuid + "?stream=true").header("authorization", accessToken))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        List<JsonNode> streamed = new ArrayList<>();
+        objectMapper.readTree(mvc.perform(asyncDispatch(streaming))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString()).forEach(streamed::add);
+
+        assertEquals(3, streamed.size());
+        assertEquals(paged, streamed);
+    }
+
+    //This test case passes when you try to get a page of the answers posted for a specific question with a page token which was not returned by the server.
+    @Test
+    public void getAllAnswersToQuestionWithInvalidPageToken() throws Exception {
+        mvc.perform(MockMvcRequestBuilders.get("/answer/all/database_question_uuid?pageToken=invalid_page_token").header("authorization", "database_accesstoken"))
+                .andExpect(status().isBadRequest())
+                .andExpect(MockMvcResultMatchers.jsonPath("code").value("PAG-001"));
+    }
+
 
 }
\ No newline at end of file
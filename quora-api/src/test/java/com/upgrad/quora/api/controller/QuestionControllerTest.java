@@ -1,6 +1,9 @@
 package com.upgrad.quora.api.controller;
 
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -9,9 +12,19 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @RunWith(SpringRunner.class)
@@ -23,6 +36,9 @@ public class QuestionControllerTest {
     @Autowired
     private MockMvc mvc;
 
+    @Autowired
+    private ObjectMapper objectMapper;
+
 
     //This test case passes when you try to create the question but the JWT token entered does not exist in the database.
     @Test
@@ -40,6 +56,51 @@ public class QuestionControllerTest {
                 .andExpect(MockMvcResultMatchers.jsonPath("code").value("ATHR-002"));
     }
 
+    //This test case passes when you try to create a batch of questions but the JWT token entered does not exist in the database.
+    @Test
+    public void createQuestionsWithNonExistingAccessToken() throws Exception {
+        mvc.perform(MockMvcRequestBuilders.post("/question/create/batch").contentType(MediaType.APPLICATION_JSON_UTF8_VALUE).content("[{\"content\":\"my_question\"}]").header("authorization", "non_existing_access_token"))
+                .andExpect(status().isForbidden())
+                .andExpect(MockMvcResultMatchers.jsonPath("code").value("ATHR-001"));
+    }
+
+    //This test case passes when you create a batch holding a valid and an empty question, the valid one is created and the empty one rejected, in request order.
+    @Test
+    public void createQuestionsWithMixedBatch() throws Exception {
+        String accessToken = TestUsers.signUpAndSignIn(mvc);
+        mvc.perform(MockMvcRequestBuilders.post("/question/create/batch").contentType(MediaType.APPLICATION_JSON_UTF8_VALUE).content("[{\"content\":\"batch_question_" + UUID.randomUUID() + "\"},{\"content\":\" \"}]").header("authorization", accessToken))
+                .andExpect(status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.length()").value(2))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].index").value(0))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].status").value("QUESTION CREATED"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].id").isNotEmpty())
+                .andExpect(MockMvcResultMatchers.jsonPath("$[1].index").value(1))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[1].status").value("QUESTION REJECTED"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[1].code").value("QUES-002"));
+    }
+
+    //This test case passes when you try to create an empty batch of questions.
+    @Test
+    public void createQuestionsWithEmptyBatch() throws Exception {
+        String accessToken = TestUsers.signUpAndSignIn(mvc);
+        mvc.perform(MockMvcRequestBuilders.post("/question/create/batch").contentType(MediaType.APPLICATION_JSON_UTF8_VALUE).content("[]").header("authorization", accessToken))
+                .andExpect(status().isBadRequest())
+                .andExpect(MockMvcResultMatchers.jsonPath("code").value("BAT-001"));
+    }
+
+    //This test case passes when you try to create a batch holding more questions than the server accepts in one request.
+    @Test
+    public void createQuestionsWithOversizedBatch() throws Exception {
+        String accessToken = TestUsers.signUpAndSignIn(mvc);
+        List<String> questions = new ArrayList<>();
+        for (int i = 0; i <= 500; i++) {
+            questions.add("{\"content\":\"oversized_batch_question_" + i + "\"}");
+        }
+        mvc.perform(MockMvcRequestBuilders.post("/question/create/batch").contentType(MediaType.APPLICATION_JSON_UTF8_VALUE).content("[" + String.join(",", questions) + "]").header("authorization", accessToken))
+                .andExpect(status().isBadRequest())
+                .andExpect(MockMvcResultMatchers.jsonPath("code").value("BAT-001"));
+    }
+
     //This test case passes when you try to get the detail of all the questions and the JWT token entered exists in the database and the user corresponding to that JWT token is signed in.
     @Test
     public void getAllQuestions() throws Exception {
@@ -47,6 +108,117 @@ public class QuestionControllerTest {
                 .andExpect(status().isOk());
     }
 
+    //This test case passes when you poll the questions again with the ETag of the previous response and no question has changed meanwhile.
+    @Test
+    public void getAllQuestionsWithMatchingETag() throws Exception {
+        String eTag = mvc.perform(MockMvcRequestBuilders.get("/question/all").header("authorization", "database_accesstoken1"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader("ETag");
+        mvc.perform(MockMvcRequestBuilders.get("/question/all").header("authorization", "database_accesstoken1").header("If-None-Match", eTag))
+                .andExpect(status().isNotModified())
+                .andExpect(MockMvcResultMatchers.header().string("ETag", eTag));
+    }
+
+    //This test case passes when you try to get the latest questions with a limit below 1.
+    @Test
+    public void getLatestQuestionsWithInvalidLimit() throws Exception {
+        mvc.perform(MockMvcRequestBuilders.get("/question/latest?limit=0").header("authorization", "database_accesstoken1"))
+                .andExpect(status().isBadRequest())
+                .andExpect(MockMvcResultMatchers.jsonPath("code").value("PAG-002"));
+    }
+
+    //This test case passes when you try to get a page of the questions with a page token which was not issued by the application.
+    @Test
+    public void getAllQuestionsWithInvalidPageToken() throws Exception {
+        mvc.perform(MockMvcRequestBuilders.get("/question/all?pageToken=not_a_page_token").header("authorization", "database_accesstoken1"))
+                .andExpect(status().isBadRequest())
+                .andExpect(MockMvcResultMatchers.jsonPath("code").value("PAG-001"));
+    }
+
+    //This test case passes when you try to get a page of the questions of a user with a page token which was not issued by the application.
+    @Test
+    public void getAllQuestionsByUserWithInvalidPageToken() throws Exception {
+        mvc.perform(MockMvcRequestBuilders.get("/question/all/database_uuid1?pageToken=not_a_page_token").header("authorization", "database_accesstoken1"))
+                .andExpect(status().isBadRequest())
+                .andExpect(MockMvcResultMatchers.jsonPath("code").value("PAG-001"));
+    }
+
+    //This test case passes when you search the questions, in the database and in the in-memory index, and find the question of the test data.
+    @Test
+    public void searchQuestions() throws Exception {
+        String accessToken = TestUsers.signUpAndSignIn(mvc);
+        for (String source : new String[]{"database", "index"}) {
+            mvc.perform(MockMvcRequestBuilders.get("/question/search").param("q", "database question content").param("source", source).header("authorization", accessToken))
+                    .andExpect(status().isOk())
+                    .andExpect(MockMvcResultMatchers.jsonPath("$[?(@.id == 'database_question_uuid')].content").value("database_question_content"));
+        }
+    }
+
+    //This test case passes when you page through the questions matching a search in the in-memory index one at a time with the next-page-token header.
+    @Test
+    public void searchQuestionsInIndexByPage() throws Exception {
+        String accessToken = TestUsers.signUpAndSignIn(mvc);
+        String word = "searched" + UUID.randomUUID().toString().replace("-", "");
+        mvc.perform(MockMvcRequestBuilders.post("/question/create/batch").contentType(MediaType.APPLICATION_JSON_UTF8_VALUE).content("[{\"content\":\"first " + word + "\"},{\"content\":\"second " + word + "\"}]").header("authorization", accessToken))
+                .andExpect(status().isOk());
+
+        MvcResult firstPage = mvc.perform(MockMvcRequestBuilders.get("/question/search").param("q", word).param("source", "index").param("limit", "1").header("authorization", accessToken))
+                .andExpect(status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.length()").value(1))
+                .andExpect(MockMvcResultMatchers.header().exists("next-page-token"))
+                .andReturn();
+        String firstId = objectMapper.readTree(firstPage.getResponse().getContentAsString()).get(0).get("id").asText();
+        mvc.perform(MockMvcRequestBuilders.get("/question/search").param("q", word).param("source", "index").param("limit", "1").param("pageToken", firstPage.getResponse().getHeader("next-page-token")).header("authorization", accessToken))
+                .andExpect(status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.length()").value(1))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].id").value(not(firstId)))
+                .andExpect(MockMvcResultMatchers.header().doesNotExist("next-page-token"));
+    }
+
+    //This test case passes when you try to stream all the questions but the JWT token entered does not exist in the database.
+    @Test
+    public void streamAllQuestionsWithNonExistingAccessToken() throws Exception {
+        mvc.perform(MockMvcRequestBuilders.get("/question/all?stream=true").header("authorization", "non_existing_access_token"))
+                .andExpect(status().isForbidden())
+                .andExpect(MockMvcResultMatchers.jsonPath("code").value("ATHR-001"));
+    }
+
+    //This test case passes when you stream all the questions with a signed in user and get the same questions, in the same order, as by paging through them.
+    @Test
+    public void streamAllQuestions() throws Exception {
+        String accessToken = TestUsers.signUpAndSignIn(mvc);
+        String content = "streamed_question_" + UUID.randomUUID();
+        String questionUuid = objectMapper.readTree(mvc.perform(MockMvcRequestBuilders.post("/question/create").param("content", content).contentType(MediaType.APPLICATION_JSON_UTF8_VALUE).header("authorization", accessToken))
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getContentAsString()).get("id").asText();
+
+        List<JsonNode> paged = new ArrayList<>();
+        String pageToken = null;
+        do {
+            MvcResult page = mvc.perform(pageToken == null
+                    ? MockMvcRequestBuilders.get("/question/all").param("limit", "100").header("authorization", accessToken)
+                    : MockMvcRequestBuilders.get("/question/all").param("limit", "100").param("pageToken", pageToken).header("authorization", accessToken))
+                    .andExpect(status().isOk())
+                    .andReturn();
+            objectMapper.readTree(page.getResponse().getContentAsString()).forEach(paged::add);
+            pageToken = page.getResponse().getHeader("next-page-token");
+        } while (pageToken != null);
+
+        MvcResult streaming = mvc.perform(MockMvcRequestBuilders.get("/question/all?stream=true").header("authorization", accessToken))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        List<JsonNode> streamed = new ArrayList<>();
+        objectMapper.readTree(mvc.perform(asyncDispatch(streaming))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString()).forEach(streamed::add);
+
+        //Answer counts are written in the background and may change between the two listings
+        paged.forEach(question -> ((ObjectNode) question).remove("answerCount"));
+        streamed.forEach(question -> ((ObjectNode) question).remove("answerCount"));
+        assertEquals(paged, streamed);
+        assertTrue(streamed.stream().anyMatch(question -> questionUuid.equals(question.get("id").asText()) && content.equals(question.get("content").asText())));
+    }
+
     //This test case passes when you try to get the detail of all the questions but the JWT token entered does not exist in the database.
     @Test
     public void getAllQuestionsWithNonExistingAccessToken() throws Exception {
@@ -95,6 +267,14 @@ public class QuestionControllerTest {
                 .andExpect(MockMvcResultMatchers.jsonPath("code").value("QUES-001"));
     }
 
+    //This test case passes when the owner of the question tries to edit it with an If-Match which does not match the current version of the question.
+    @Test
+    public void editQuestionWithStaleVersion() throws Exception {
+        mvc.perform(MockMvcRequestBuilders.put("/question/edit/database_question_uuid?content=edited_question").contentType(MediaType.APPLICATION_JSON_UTF8_VALUE).header("authorization", "database_accesstoken1").header("If-Match", "\"999999\""))
+                .andExpect(status().isPreconditionFailed())
+                .andExpect(MockMvcResultMatchers.jsonPath("code").value("QUES-005"));
+    }
+
     //This test case passes when you try to delete the question but the JWT token entered does not exist in the database.
     @Test
     public void deleteQuestionWithNonExistingAccessToken() throws Exception {
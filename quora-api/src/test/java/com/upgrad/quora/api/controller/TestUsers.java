@@ -0,0 +1,38 @@
+package com.upgrad.quora.api.controller;
+
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.UUID;
+
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+//Signs up and signs in new users, for the test cases which need a session that has not expired.
+final class TestUsers {
+
+    static final String PASSWORD = "test_password";
+
+    private TestUsers() {
+    }
+
+    static String signUp(final MockMvc mvc) throws Exception {
+        final String userName = "test_" + UUID.randomUUID().toString().substring(0, 8);
+        mvc.perform(MockMvcRequestBuilders.post("/user/signup?firstName=a&lastName=a&userName=" + userName + "&emailAddress=" + userName + "@test&password=" + PASSWORD + "&country=a&aboutMe=a&dob=a&contactNumber=a").contentType(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(status().isCreated());
+        return userName;
+    }
+
+    static String signIn(final MockMvc mvc, final String userName) throws Exception {
+        final String credentials = Base64.getEncoder().encodeToString((userName + ":" + PASSWORD).getBytes(StandardCharsets.UTF_8));
+        return mvc.perform(MockMvcRequestBuilders.post("/user/signin").header("authorization", "Basic " + credentials))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader("access-token");
+    }
+
+    static String signUpAndSignIn(final MockMvc mvc) throws Exception {
+        return signIn(mvc, signUp(mvc));
+    }
+}
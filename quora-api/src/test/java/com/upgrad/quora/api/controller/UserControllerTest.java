@@ -1,5 +1,6 @@
 package com.upgrad.quora.api.controller;
 
+import com.upgrad.quora.service.business.PasswordHashingPool;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -11,6 +12,14 @@ import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertTrue;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @RunWith(SpringRunner.class)
@@ -21,6 +30,9 @@ public class UserControllerTest {
     @Autowired
     private MockMvc mvc;
 
+    @Autowired
+    private PasswordHashingPool passwordHashingPool;
+
     //This test case passes when you signup with a username that already exists in the database.
     @Test
     public void signupWithRepeatedUserName() throws Exception {
@@ -38,6 +50,23 @@ public class UserControllerTest {
     }
 
 
+    //This test case passes when you check the availability of a username and an email that already exist in the database.
+    @Test
+    public void availabilityOfExistingUserNameAndEmail() throws Exception {
+        mvc.perform(MockMvcRequestBuilders.get("/user/availability?username=DATABASE_USERNAME&email=database_email"))
+                .andExpect(status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("username_available").value(false))
+                .andExpect(MockMvcResultMatchers.jsonPath("email_available").value(false));
+    }
+
+    //This test case passes when you check the availability of a username that does not exist in the database.
+    @Test
+    public void availabilityOfNonExistingUserName() throws Exception {
+        mvc.perform(MockMvcRequestBuilders.get("/user/availability?username=non_existing_username"))
+                .andExpect(status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("username_available").value(true));
+    }
+
     //This test case passes when you try to signout but the JWT token entered does not exist in the database.
     @Test
     public void signoutWithNonExistingAccessToken() throws Exception {
@@ -45,4 +74,36 @@ public class UserControllerTest {
                 .andExpect(status().isUnauthorized())
                 .andExpect(MockMvcResultMatchers.jsonPath("code").value("SGR-001"));
     }
-}
\ No newline at end of file
+
+    //This test case passes when question listings are still served while more signins than there are database connections wait for a saturated password hashing pool.
+    @Test
+    public void saturatedHashingPoolDoesNotBlockQuestionListing() throws Exception {
+        final String accessToken = TestUsers.signUpAndSignIn(mvc);
+        final List<String> userNames = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            userNames.add(TestUsers.signUp(mvc));
+        }
+
+        final CountDownLatch release = new CountDownLatch(1);
+        final ExecutorService clients = Executors.newFixedThreadPool(4 + userNames.size());
+        try {
+            //Occupy every hashing thread, so that the signins below wait in the queue of the pool.
+            for (int i = 0; i < 4; i++) {
+                clients.submit(() -> passwordHashingPool.execute(() -> release.await(10, TimeUnit.SECONDS)));
+            }
+            for (String userName : userNames) {
+                clients.submit(() -> TestUsers.signIn(mvc, userName));
+            }
+            Thread.sleep(500);
+
+            final long startedAt = System.nanoTime();
+            mvc.perform(MockMvcRequestBuilders.get("/question/all").header("authorization", accessToken))
+                    .andExpect(status().isOk());
+            assertTrue(System.nanoTime() - startedAt < TimeUnit.SECONDS.toNanos(2));
+        } finally {
+            release.countDown();
+            clients.shutdown();
+            clients.awaitTermination(30, TimeUnit.SECONDS);
+        }
+    }
+}
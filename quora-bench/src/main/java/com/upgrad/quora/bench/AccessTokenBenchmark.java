@@ -0,0 +1,77 @@
+package com.upgrad.quora.bench;
+
+import com.upgrad.quora.api.controller.UserController;
+import com.upgrad.quora.service.business.JwtKeyRing;
+import com.upgrad.quora.service.business.JwtTokenProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
+import java.util.Base64;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Issuing and verifying access tokens and decoding the Basic authorization header of /user/signin.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AccessTokenBenchmark {
+
+    private JwtTokenProvider jwtTokenProvider;
+
+    private String sessionUuid;
+
+    private String userUuid;
+
+    private ZonedDateTime issuedAt;
+
+    private ZonedDateTime expiresAt;
+
+    private String accessToken;
+
+    private String authorization;
+
+    @Setup
+    public void setup() {
+        JwtKeyRing keyRing = new JwtKeyRing();
+        keyRing.rotate("bench", "a-fixed-secret-so-that-runs-are-comparable");
+        jwtTokenProvider = new JwtTokenProvider(keyRing);
+
+        sessionUuid = UUID.randomUUID().toString();
+        userUuid = UUID.randomUUID().toString();
+        issuedAt = ZonedDateTime.now();
+        expiresAt = issuedAt.plusHours(8);
+        accessToken = jwtTokenProvider.generateToken(sessionUuid, 1, userUuid, "nonadmin", issuedAt, expiresAt);
+        authorization = "Basic " + Base64.getEncoder()
+                .encodeToString("database_username:database_password".getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Benchmark
+    public String generateToken() {
+        return jwtTokenProvider.generateToken(sessionUuid, 1, userUuid, "nonadmin", issuedAt, expiresAt);
+    }
+
+    @Benchmark
+    public Object verifyToken() {
+        return jwtTokenProvider.verifyToken(accessToken);
+    }
+
+    @Benchmark
+    public String[] decodeBasicAuthorization() {
+        return UserController.decodeBasicAuthorization(authorization);
+    }
+}
@@ -0,0 +1,79 @@
+package com.upgrad.quora.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Runs the authentication, search, duplicate lookup and insert benchmarks at 1, 4 and 16 threads with the gc
+ * profiler. The insert benchmark needs a running Postgres.
+ *
+ * Usage: java -jar quora-bench/target/benchmarks.jar [label] [benchmark regex]
+ *
+ * For every thread count the full JMH result is written as JSON to jmh/[label]-[threads]t.json, and one summary
+ * line per benchmark and thread count to jmh/[label].csv (benchmark, threads, ops/s, error, bytes allocated per op).
+ * Run once on each revision with a different label and compare the CSV files.
+ */
+public final class BenchmarkRunner {
+
+    private static final int[] THREAD_COUNTS = {1, 4, 16};
+
+    private BenchmarkRunner() {
+    }
+
+    public static void main(final String[] args) throws RunnerException, IOException {
+        final String label = args.length > 0 ? args[0] : "current";
+        final String include = args.length > 1 ? args[1] : "com\\.upgrad\\.quora\\.bench\\..*";
+
+        final File directory = new File("jmh");
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory.getAbsolutePath());
+        }
+
+        try (PrintWriter summary = new PrintWriter(new File(directory, label + ".csv"), StandardCharsets.UTF_8.name())) {
+            summary.println("benchmark,threads,score,error,unit,alloc_bytes_per_op");
+            for (int threads : THREAD_COUNTS) {
+                Options options = new OptionsBuilder()
+                        .include(include)
+                        .threads(threads)
+                        .addProfiler(GCProfiler.class)
+                        .resultFormat(ResultFormatType.JSON)
+                        .result(new File(directory, label + "-" + threads + "t.json").getPath())
+                        .build();
+                Collection<RunResult> results = new Runner(options).run();
+                for (RunResult result : results) {
+                    Result primary = result.getPrimaryResult();
+                    summary.println(String.format(Locale.ROOT, "%s,%d,%.3f,%.3f,%s,%.1f",
+                            result.getParams().getBenchmark(), threads, primary.getScore(), primary.getScoreError(),
+                            primary.getScoreUnit(), allocatedBytesPerOperation(result)));
+                }
+                summary.flush();
+            }
+        }
+    }
+
+    /**
+     * The label of the gc profiler result differs between JMH versions, it is matched on its suffix.
+     */
+    private static double allocatedBytesPerOperation(final RunResult result) {
+        for (Map.Entry<String, Result> secondary : result.getSecondaryResults().entrySet()) {
+            if (secondary.getKey().endsWith("gc.alloc.rate.norm")) {
+                return secondary.getValue().getScore();
+            }
+        }
+        return Double.NaN;
+    }
+}
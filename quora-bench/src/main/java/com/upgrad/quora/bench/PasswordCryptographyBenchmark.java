@@ -0,0 +1,61 @@
+package com.upgrad.quora.bench;
+
+import com.upgrad.quora.service.business.PasswordCryptographyProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Password hashing as done by signup (new salt) and signin (stored salt), and the hex encoding of the hash.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PasswordCryptographyBenchmark {
+
+    private static final String PASSWORD = "database_password";
+
+    private final PasswordCryptographyProvider passwordCryptographyProvider = new PasswordCryptographyProvider();
+
+    private String salt;
+
+    /**
+     * Same length as the PBKDF2 output stored in USERS.
+     */
+    private final byte[] hash = new byte[8];
+
+    @Setup
+    public void setup() {
+        salt = passwordCryptographyProvider.encrypt(PASSWORD)[0];
+        for (int i = 0; i < hash.length; i++) {
+            hash[i] = (byte) (i * 37);
+        }
+    }
+
+    @Benchmark
+    public String[] encryptWithNewSalt() {
+        return passwordCryptographyProvider.encrypt(PASSWORD);
+    }
+
+    @Benchmark
+    public String encryptWithStoredSalt() {
+        return PasswordCryptographyProvider.encrypt(PASSWORD, salt);
+    }
+
+    @Benchmark
+    public String bytesToHex() {
+        return PasswordCryptographyProvider.bytesToHex(hash);
+    }
+}
@@ -0,0 +1,128 @@
+package com.upgrad.quora.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Question inserts as /question/create and /question/create/batch send them, against a running Postgres.
+ * Every thread works on its own temporary copy of the QUESTION table, so the database is left as it was.
+ *
+ * singleInserts commits one INSERT per transaction with the id taken from the column default, like the single
+ * create endpoint. batchInserts takes the ids of a batch from a sequence stepping by 50, like Hibernate's pooled
+ * optimizer, and sends the inserts as one JDBC batch in one transaction. Both report questions per second.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QuestionInsertBenchmark {
+
+    private static final int BATCH_SIZE = 50;
+
+    private static final int USER_ID = 1;
+
+    @Param("jdbc:postgresql://localhost:5432/quora?reWriteBatchedInserts=true")
+    private String url;
+
+    @Param("postgres")
+    private String username;
+
+    @Param("password")
+    private String password;
+
+    private Connection connection;
+
+    private PreparedStatement insertWithDefaultId;
+
+    private PreparedStatement nextId;
+
+    private PreparedStatement insertWithId;
+
+    @Setup(Level.Trial)
+    public void setup() throws SQLException {
+        connection = DriverManager.getConnection(url, username, password);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TEMPORARY SEQUENCE bench_question_id_seq INCREMENT BY " + BATCH_SIZE);
+            statement.execute("CREATE TEMPORARY TABLE bench_question(id INTEGER DEFAULT nextval('bench_question_id_seq')"
+                    + " PRIMARY KEY, uuid VARCHAR(200) NOT NULL, content VARCHAR(500) NOT NULL, date TIMESTAMP NOT NULL,"
+                    + " user_id INTEGER NOT NULL)");
+        }
+        connection.setAutoCommit(false);
+        insertWithDefaultId = connection.prepareStatement(
+                "INSERT INTO bench_question(uuid, content, date, user_id) VALUES (?, ?, ?, ?)",
+                new String[] {"id"});
+        nextId = connection.prepareStatement("SELECT nextval('bench_question_id_seq')");
+        insertWithId = connection.prepareStatement(
+                "INSERT INTO bench_question(id, uuid, content, date, user_id) VALUES (?, ?, ?, ?, ?)");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public int singleInserts() throws SQLException {
+        int lastId = 0;
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            bind(insertWithDefaultId, 1);
+            insertWithDefaultId.executeUpdate();
+            try (ResultSet keys = insertWithDefaultId.getGeneratedKeys()) {
+                keys.next();
+                lastId = keys.getInt(1);
+            }
+            connection.commit();
+        }
+        return lastId;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public int[] batchInserts() throws SQLException {
+        final int highId;
+        try (ResultSet id = nextId.executeQuery()) {
+            id.next();
+            highId = id.getInt(1);
+        }
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            insertWithId.setInt(1, highId - BATCH_SIZE + 1 + i);
+            bind(insertWithId, 2);
+            insertWithId.addBatch();
+        }
+        final int[] counts = insertWithId.executeBatch();
+        connection.commit();
+        return counts;
+    }
+
+    private static void bind(final PreparedStatement statement, final int first) throws SQLException {
+        statement.setString(first, UUID.randomUUID().toString());
+        statement.setString(first + 1, "What is the fastest way to insert many rows into Postgres?");
+        statement.setTimestamp(first + 2, new Timestamp(System.currentTimeMillis()));
+        statement.setInt(first + 3, USER_ID);
+    }
+}
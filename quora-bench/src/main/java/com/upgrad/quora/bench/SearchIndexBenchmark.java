@@ -0,0 +1,114 @@
+package com.upgrad.quora.bench;
+
+import com.upgrad.quora.service.business.SearchIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Query latency of the in-memory search index over synthetic documents whose words follow a Zipf distribution,
+ * so that queries mix common words with long postings and rare words with short ones. At the end of a trial the
+ * heap the searches left reachable, the score accumulators of the index, is printed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class SearchIndexBenchmark {
+
+    private static final int VOCABULARY_SIZE = 50000;
+
+    private static final int QUERY_COUNT = 1024;
+
+    /**
+     * One row more than the default page size, as requested by the search endpoints.
+     */
+    private static final int LIMIT = 51;
+
+    @Param("1000000")
+    private int documents;
+
+    private final SearchIndex index = new SearchIndex();
+
+    private final String[] queries = new String[QUERY_COUNT];
+
+    private final SearchIndex.Hit[] pageEnds = new SearchIndex.Hit[QUERY_COUNT];
+
+    private double[] cumulative;
+
+    private long heapAfterIndexing;
+
+    @Setup
+    public void setup() {
+        cumulative = new double[VOCABULARY_SIZE];
+        double sum = 0;
+        for (int rank = 0; rank < VOCABULARY_SIZE; rank++) {
+            sum += 1.0 / (rank + 1);
+            cumulative[rank] = sum;
+        }
+        final Random random = new Random(42);
+        for (int id = 1; id <= documents; id++) {
+            index.put(id, id % 1000, SearchIndex.NO_PARENT, "uuid-" + id, text(random, 8 + random.nextInt(23)));
+        }
+        heapAfterIndexing = usedHeapAfterGc();
+        for (int i = 0; i < QUERY_COUNT; i++) {
+            queries[i] = text(random, 2 + random.nextInt(2));
+            final List<SearchIndex.Hit> firstPage = index.search(queries[i], LIMIT, null, null);
+            pageEnds[i] = firstPage.isEmpty() ? null : firstPage.get(firstPage.size() - 1);
+        }
+    }
+
+    @Benchmark
+    public List<SearchIndex.Hit> firstPage() {
+        return index.search(queries[ThreadLocalRandom.current().nextInt(QUERY_COUNT)], LIMIT, null, null);
+    }
+
+    @Benchmark
+    public List<SearchIndex.Hit> nextPage() {
+        final int query = ThreadLocalRandom.current().nextInt(QUERY_COUNT);
+        final SearchIndex.Hit after = pageEnds[query];
+        return after == null
+                ? index.search(queries[query], LIMIT, null, null)
+                : index.search(queries[query], LIMIT, after.getScore(), after.getId());
+    }
+
+    @TearDown
+    public void printRetainedHeap() {
+        System.out.printf("Heap retained by searches: %.1f MB%n",
+                (usedHeapAfterGc() - heapAfterIndexing) / (1024.0 * 1024.0));
+    }
+
+    private static long usedHeapAfterGc() {
+        System.gc();
+        System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private String text(final Random random, final int words) {
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            int rank = Arrays.binarySearch(cumulative, random.nextDouble() * cumulative[VOCABULARY_SIZE - 1]);
+            rank = rank < 0 ? -rank - 1 : rank;
+            text.append(i == 0 ? "" : " ").append("q").append(Integer.toString(rank, 36));
+        }
+        return text.toString();
+    }
+}
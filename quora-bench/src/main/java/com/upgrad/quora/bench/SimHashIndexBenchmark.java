@@ -0,0 +1,96 @@
+package com.upgrad.quora.bench;
+
+import com.upgrad.quora.service.business.SimHashIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Probe cost of the duplicate question index over synthetic questions whose words follow a Zipf distribution,
+ * for a question repeating an indexed one with its words shuffled and for a new question.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class SimHashIndexBenchmark {
+
+    private static final int VOCABULARY_SIZE = 50000;
+
+    private static final int PROBE_COUNT = 1024;
+
+    private static final int LIMIT = 5;
+
+    @Param("2000000")
+    private int questions;
+
+    private final SimHashIndex index = new SimHashIndex();
+
+    private final String[] duplicates = new String[PROBE_COUNT];
+
+    private final String[] newQuestions = new String[PROBE_COUNT];
+
+    private double[] cumulative;
+
+    @Setup
+    public void setup() {
+        cumulative = new double[VOCABULARY_SIZE];
+        double sum = 0;
+        for (int rank = 0; rank < VOCABULARY_SIZE; rank++) {
+            sum += 1.0 / (rank + 1);
+            cumulative[rank] = sum;
+        }
+        final Random random = new Random(42);
+        for (int id = 1; id <= questions; id++) {
+            final List<String> words = words(random, 6 + random.nextInt(15));
+            index.put(id, "uuid-" + id, String.join(" ", words));
+            if (id <= PROBE_COUNT) {
+                Collections.shuffle(words, random);
+                duplicates[id - 1] = String.join(" ", words);
+            }
+        }
+        for (int i = 0; i < PROBE_COUNT; i++) {
+            newQuestions[i] = String.join(" ", words(random, 6 + random.nextInt(15)));
+        }
+    }
+
+    @Benchmark
+    public List<SimHashIndex.Match> probeDuplicate() {
+        return index.find(duplicates[ThreadLocalRandom.current().nextInt(PROBE_COUNT)], SimHashIndex.MAX_DISTANCE,
+                LIMIT);
+    }
+
+    @Benchmark
+    public List<SimHashIndex.Match> probeNewQuestion() {
+        return index.find(newQuestions[ThreadLocalRandom.current().nextInt(PROBE_COUNT)], SimHashIndex.MAX_DISTANCE,
+                LIMIT);
+    }
+
+    private List<String> words(final Random random, final int count) {
+        final List<String> words = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int rank = Arrays.binarySearch(cumulative, random.nextDouble() * cumulative[VOCABULARY_SIZE - 1]);
+            rank = rank < 0 ? -rank - 1 : rank;
+            words.add("q" + Integer.toString(rank, 36));
+        }
+        return words;
+    }
+}
@@ -0,0 +1,208 @@
+package com.upgrad.quora.service.business;
+
+import com.upgrad.quora.service.dao.UserAuthDao;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom filter over the SHA-256 digests of every access token in USER_AUTH, used to reject tokens which were
+ * definitely never issued without a database round trip. It is rebuilt from USER_AUTH in the background at startup
+ * and periodically, picks up rows created on other nodes incrementally, and is updated on signin.
+ * Until the first build has finished every token is reported as possibly known.
+ */
+@Component
+public class AccessTokenBloomFilter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AccessTokenBloomFilter.class);
+
+    private static final int LOAD_BATCH_SIZE = 10000;
+
+    /**
+     * Incremental loads re-read this many ids before the last one seen, ids are not committed in order.
+     */
+    private static final long REFRESH_OVERLAP = 1000;
+
+    private static final ThreadLocal<MessageDigest> SHA_256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    });
+
+    @Value("${quora.auth.token-filter.enabled:true}")
+    private boolean enabled;
+
+    @Value("${quora.auth.token-filter.expected-tokens:1000000}")
+    private long expectedTokens;
+
+    @Value("${quora.auth.token-filter.false-positive-rate:0.01}")
+    private double falsePositiveRate;
+
+    @Value("${quora.auth.token-filter.rebuild-interval-millis:21600000}")
+    private long rebuildIntervalMillis;
+
+    @Autowired private UserAuthDao userAuthDao;
+
+    @Autowired private MeterRegistry meterRegistry;
+
+    private volatile Bits bits;
+
+    private volatile long lastSeenId;
+
+    private volatile long lastBuiltAt;
+
+    private volatile long lastRefreshedAt;
+
+    private Counter rejections;
+
+    @PostConstruct
+    public void registerMetrics() {
+        rejections = Counter.builder("quora.auth.token-filter.rejected").register(meterRegistry);
+    }
+
+    /**
+     * @param accessToken : Access token sent by the client.
+     * @return false only if the token was definitely never issued.
+     */
+    public boolean mightContain(final String accessToken) {
+        final Bits current = bits;
+        if (!enabled || current == null || current.mightContain(digest(accessToken))) {
+            return true;
+        }
+        rejections.increment();
+        return false;
+    }
+
+    /**
+     * Records a newly issued access token.
+     *
+     * @param accessToken : Access token of the new session.
+     */
+    public void add(final String accessToken) {
+        final Bits current = bits;
+        if (current != null) {
+            current.add(digest(accessToken));
+        }
+    }
+
+    /**
+     * Time of the last completed load from USER_AUTH, tokens issued after it on other nodes may be missing.
+     *
+     * @return epoch millis, 0 before the first build.
+     */
+    public long getLastRefreshedAt() {
+        return lastRefreshedAt;
+    }
+
+    @Scheduled(fixedDelayString = "${quora.auth.token-filter.refresh-interval-millis:30000}")
+    public void refresh() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            final long startedAt = System.currentTimeMillis();
+            if (bits == null || startedAt - lastBuiltAt >= rebuildIntervalMillis) {
+                rebuild(startedAt);
+            } else {
+                lastSeenId = load(bits, Math.max(0, lastSeenId - REFRESH_OVERLAP));
+            }
+            lastRefreshedAt = startedAt;
+        } catch (RuntimeException e) {
+            LOGGER.error("Could not refresh the access token filter", e);
+        }
+    }
+
+    private void rebuild(final long startedAt) {
+        final long tokenCount = userAuthDao.getAccessTokenCount();
+        final Bits rebuilt = new Bits(Math.max(expectedTokens, tokenCount * 2), falsePositiveRate);
+        final long seenId = load(rebuilt, 0);
+        bits = rebuilt;
+        lastSeenId = seenId;
+        lastBuiltAt = startedAt;
+        LOGGER.info("Access token filter built from {} sessions", tokenCount);
+    }
+
+    private long load(final Bits target, final long afterId) {
+        long seenId = afterId;
+        long maxSeenId = afterId;
+        while (true) {
+            List<Object[]> batch = userAuthDao.getAccessTokensAfter(seenId, LOAD_BATCH_SIZE);
+            for (Object[] row : batch) {
+                seenId = ((Number) row[0]).longValue();
+                maxSeenId = Math.max(maxSeenId, seenId);
+                target.add(digest((String) row[1]));
+            }
+            if (batch.size() < LOAD_BATCH_SIZE) {
+                return maxSeenId;
+            }
+        }
+    }
+
+    private static byte[] digest(final String accessToken) {
+        return SHA_256.get().digest(accessToken.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Fixed size bit set with k probes derived from two 64 bit halves of the digest (double hashing).
+     */
+    private static final class Bits {
+        private final AtomicLongArray words;
+        private final long bitCount;
+        private final int hashCount;
+
+        private Bits(final long expectedInsertions, final double falsePositiveRate) {
+            long bits = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+            this.words = new AtomicLongArray((int) Math.min(Integer.MAX_VALUE - 8, (bits + 63) / 64));
+            this.bitCount = words.length() * 64L;
+            this.hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedInsertions * Math.log(2)));
+        }
+
+        private void add(final byte[] digest) {
+            final long h1 = toLong(digest, 0);
+            final long h2 = toLong(digest, 8);
+            for (int i = 0; i < hashCount; i++) {
+                final long bit = Math.floorMod(h1 + i * h2, bitCount);
+                final int word = (int) (bit >>> 6);
+                final long mask = 1L << bit;
+                long current;
+                do {
+                    current = words.get(word);
+                } while ((current & mask) == 0 && !words.compareAndSet(word, current, current | mask));
+            }
+        }
+
+        private boolean mightContain(final byte[] digest) {
+            final long h1 = toLong(digest, 0);
+            final long h2 = toLong(digest, 8);
+            for (int i = 0; i < hashCount; i++) {
+                final long bit = Math.floorMod(h1 + i * h2, bitCount);
+                if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static long toLong(final byte[] bytes, final int offset) {
+            long value = 0;
+            for (int i = offset; i < offset + 8; i++) {
+                value = (value << 8) | (bytes[i] & 0xFF);
+            }
+            return value;
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package com.upgrad.quora.service.business;
+
+import com.upgrad.quora.service.common.TransactionCallbacks;
+import com.upgrad.quora.service.entity.UserAuthEntity;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Bounded, expiry-aware cache of access token lookups sitting in front of the USER_AUTH table.
+ * Positive entries live until the session's expiresAt, negative entries (unknown tokens) only for a short time
+ * and there is a separate cap on how many of them are kept.
+ *
+ * Every invalidation moves the cache to a new generation. A lookup remembers the generation before it reads the
+ * database and drops what it cached if the generation moved meanwhile, so a row read before a signout or user
+ * deletion committed cannot stay cached after their eviction.
+ */
+@Component
+public class AccessTokenCache {
+
+    @Value("${quora.auth.token-cache.max-entries:10000}")
+    private int maxEntries;
+
+    @Value("${quora.auth.token-cache.max-negative-entries:1000}")
+    private int maxNegativeEntries;
+
+    @Value("${quora.auth.token-cache.negative-ttl-millis:5000}")
+    private long negativeTtlMillis;
+
+    @Autowired private MeterRegistry meterRegistry;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final Map<String, Long> negativeEntries = new ConcurrentHashMap<>();
+
+    /**
+     * Moved by every invalidation, before it removes anything.
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    @PostConstruct
+    public void registerMetrics() {
+        FunctionCounter.builder("quora.auth.token-cache.hits", hits, LongAdder::sum).register(meterRegistry);
+        FunctionCounter.builder("quora.auth.token-cache.misses", misses, LongAdder::sum).register(meterRegistry);
+        FunctionCounter.builder("quora.auth.token-cache.evictions", evictions, LongAdder::sum).register(meterRegistry);
+        Gauge.builder("quora.auth.token-cache.size", entries, Map::size).register(meterRegistry);
+    }
+
+    /**
+     * Returns the session for the access token, loading it through the loader on a miss.
+     *
+     * @param accessToken : Access token sent by the client.
+     * @param loader : Database lookup used on a cache miss, returns null for unknown tokens.
+     * @return UserAuthEntity or null if the token is unknown.
+     */
+    public UserAuthEntity getOrLoad(final String accessToken, final Function<String, UserAuthEntity> loader) {
+        final long now = System.currentTimeMillis();
+
+        Entry entry = entries.get(accessToken);
+        if (entry != null) {
+            if (entry.deadline > now) {
+                hits.increment();
+                return entry.userAuthEntity;
+            }
+            if (entries.remove(accessToken, entry)) {
+                evictions.increment();
+            }
+        }
+
+        Long negativeDeadline = negativeEntries.get(accessToken);
+        if (negativeDeadline != null) {
+            if (negativeDeadline > now) {
+                hits.increment();
+                return null;
+            }
+            negativeEntries.remove(accessToken, negativeDeadline);
+        }
+
+        misses.increment();
+        final long loadedGeneration = generation.get();
+        UserAuthEntity userAuthEntity = loader.apply(accessToken);
+        if (userAuthEntity == null) {
+            if (negativeEntries.size() < maxNegativeEntries) {
+                negativeEntries.put(accessToken, now + negativeTtlMillis);
+            }
+        } else {
+            final Entry loaded = put(accessToken, userAuthEntity, now);
+            // Checked after the put, so an invalidation either sees the entry or is seen here.
+            if (generation.get() != loadedGeneration && entries.remove(accessToken, loaded)) {
+                evictions.increment();
+            }
+        }
+        return userAuthEntity;
+    }
+
+    /**
+     * Drops the token from the cache right away and once more after the surrounding transaction commits, when
+     * the change becomes visible to the lookups; a lookup which read the row before then does not keep it.
+     *
+     * @param accessToken : Access token whose session has changed.
+     */
+    public void invalidate(final String accessToken) {
+        evict(accessToken);
+        TransactionCallbacks.afterCommit(() -> evict(accessToken));
+    }
+
+    /**
+     * Drops every cached session belonging to the given user.
+     *
+     * @param userId : Id of the user.
+     */
+    public void invalidateUser(final Integer userId) {
+        generation.incrementAndGet();
+        entries.values().removeIf(entry -> {
+            boolean matches = userId.equals(entry.userAuthEntity.getUserEntity().getId());
+            if (matches) {
+                evictions.increment();
+            }
+            return matches;
+        });
+    }
+
+    /**
+     * Drops the cached session with the given uuid, used when it was signed out on another node.
+     *
+     * @param sessionUuid : uuid of the USER_AUTH row.
+     */
+    public void invalidateSession(final String sessionUuid) {
+        generation.incrementAndGet();
+        entries.values().removeIf(entry -> {
+            boolean matches = sessionUuid.equals(entry.userAuthEntity.getUuid());
+            if (matches) {
+                evictions.increment();
+            }
+            return matches;
+        });
+    }
+
+    /**
+     * Drops every entry, positive and negative.
+     */
+    public void clear() {
+        generation.incrementAndGet();
+        evictions.add(entries.size());
+        entries.clear();
+        negativeEntries.clear();
+    }
+
+    /**
+     * Forgets a negative lookup for a token that has just been issued.
+     *
+     * @param accessToken : Newly issued access token.
+     */
+    public void forgetNegative(final String accessToken) {
+        negativeEntries.remove(accessToken);
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private void evict(final String accessToken) {
+        generation.incrementAndGet();
+        if (entries.remove(accessToken) != null) {
+            evictions.increment();
+        }
+        negativeEntries.remove(accessToken);
+    }
+
+    private Entry put(final String accessToken, final UserAuthEntity userAuthEntity, final long now) {
+        long deadline = userAuthEntity.getExpiresAt().toInstant().toEpochMilli();
+        if (deadline <= now) {
+            // Already expired sessions are only cached as briefly as unknown tokens.
+            deadline = now + negativeTtlMillis;
+        }
+        if (entries.size() >= maxEntries) {
+            purge(now);
+        }
+        final Entry entry = new Entry(userAuthEntity, deadline);
+        entries.put(accessToken, entry);
+        return entry;
+    }
+
+    /**
+     * Removes expired entries and, if the cache is still full, an arbitrary tenth of it.
+     */
+    private void purge(final long now) {
+        entries.values().removeIf(entry -> {
+            boolean expired = entry.deadline <= now;
+            if (expired) {
+                evictions.increment();
+            }
+            return expired;
+        });
+        int excess = entries.size() - maxEntries + Math.max(1, maxEntries / 10);
+        Iterator<String> iterator = entries.keySet().iterator();
+        while (excess-- > 0 && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+            evictions.increment();
+        }
+        negativeEntries.values().removeIf(deadline -> deadline <= now);
+    }
+
+    private static final class Entry {
+        private final UserAuthEntity userAuthEntity;
+        private final long deadline;
+
+        private Entry(final UserAuthEntity userAuthEntity, final long deadline) {
+            this.userAuthEntity = userAuthEntity;
+            this.deadline = deadline;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.upgrad.quora.service.business;
 
+import com.upgrad.quora.service.dao.AnswerDao;
 import com.upgrad.quora.service.dao.UserAuthDao;
 import com.upgrad.quora.service.dao.UserDao;
 import com.upgrad.quora.service.entity.UserAuthEntity;
@@ -11,12 +12,35 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Map;
+
 @Service
 public class AdminService {
 
     @Autowired private UserAuthDao userAuthDao;
 
     @Autowired private UserDao userDao;
+
+    @Autowired private AnswerDao answerDao;
+
+    @Autowired private AccessTokenCache accessTokenCache;
+
+    @Autowired private TokenDenylist tokenDenylist;
+
+    @Autowired private UserMembershipIndex userMembershipIndex;
+
+    @Autowired private InvalidationBus invalidationBus;
+
+    @Autowired private QuestionCache questionCache;
+
+    @Autowired private ContentSearchIndex contentSearchIndex;
+
+    @Autowired private ListingVersions listingVersions;
+
+    @Autowired private LatestQuestions latestQuestions;
+
+    @Autowired private AnswerCounts answerCounts;
+
     /**
      * Delete a user by userID, to be accessed by Admin user.
      *
@@ -50,7 +74,19 @@ public class AdminService {
                     "USR-001", "User with entered uuid to be deleted does not exist");
         }
 
+        // The answers of the user on other users' questions go with the ON DELETE CASCADE, uncount them.
+        Map<Integer, Long> answersByQuestion = this.answerDao.getAnswerCountsByUser(existingUser.getId());
         UserEntity deletedUser = this.userDao.deleteUser(userId);
+        // USER_AUTH rows of the user go away with the ON DELETE CASCADE.
+        this.accessTokenCache.invalidateUser(existingUser.getId());
+        this.tokenDenylist.revokeUser(existingUser.getUuid());
+        this.userMembershipIndex.userDeleted(existingUser.getUserName(), existingUser.getEmail());
+        this.questionCache.invalidateUser(existingUser.getId());
+        this.contentSearchIndex.userDeleted(existingUser.getId());
+        this.listingVersions.allChanged();
+        this.latestQuestions.userDeleted(existingUser.getId());
+        this.answerCounts.answersDeleted(answersByQuestion);
+        this.invalidationBus.userDeleted(existingUser);
         return deletedUser;
     }
-}
\ No newline at end of file
+}
\ No newline at end of file
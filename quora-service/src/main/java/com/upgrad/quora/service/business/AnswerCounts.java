@@ -0,0 +1,223 @@
+package com.upgrad.quora.service.business;
+
+import com.upgrad.quora.service.common.TransactionCallbacks;
+import com.upgrad.quora.service.dao.QuestionDao;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps QUESTION.answer_count without touching the question row on the answer write path. Committed answer
+ * creates and deletes add a delta per question in memory, and a background task sends the deltas of all
+ * questions as one JDBC batch of additive UPDATEs, so the nodes never overwrite each other's counts and a hot
+ * question costs one UPDATE per flush instead of one per answer.
+ *
+ * A delta is taken out of the map with one atomic remove, so an answer committing during a flush is counted by
+ * the next one. Deltas of a failed flush are put back, those still in memory when a node dies are lost; the
+ * reconciliation job recounts the answers in ranges of question ids and corrects the rows which drifted. The
+ * recount of a range already includes the committed answers whose deltas are pending on this node, so it takes
+ * them out of the map right before counting instead of letting the next flush add them a second time. A recount
+ * racing with deltas not yet flushed by another node can still be off by those, until the next run.
+ */
+@Component
+public class AnswerCounts {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AnswerCounts.class);
+
+    @Value("${quora.answer-count.reconcile.enabled:true}")
+    private boolean reconcileEnabled;
+
+    @Value("${quora.answer-count.reconcile.batch-size:1000}")
+    private int reconcileBatchSize;
+
+    @Value("${quora.answer-count.reconcile.batch-pause-millis:100}")
+    private long reconcileBatchPauseMillis;
+
+    @Autowired private QuestionDao questionDao;
+
+    @Autowired private ListingVersions listingVersions;
+
+    @Autowired private InvalidationBus invalidationBus;
+
+    @Autowired private PlatformTransactionManager transactionManager;
+
+    @Autowired private MeterRegistry meterRegistry;
+
+    /**
+     * Committed change of the answer count by question id, not flushed yet.
+     */
+    private final ConcurrentHashMap<Integer, Long> pending = new ConcurrentHashMap<>();
+
+    private TransactionTemplate transactionTemplate;
+
+    private Counter flushedQuestions;
+
+    private Counter correctedQuestions;
+
+    @PostConstruct
+    public void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        Gauge.builder("quora.answer-count.pending", pending, Map::size).register(meterRegistry);
+        flushedQuestions = Counter.builder("quora.answer-count.flushed").register(meterRegistry);
+        correctedQuestions = Counter.builder("quora.answer-count.corrected").register(meterRegistry);
+    }
+
+    /**
+     * Counts an answer of the question once the surrounding transaction commits.
+     *
+     * @param questionId : Id of the answered question.
+     */
+    public void answerCreated(final int questionId) {
+        TransactionCallbacks.afterCommit(() -> add(questionId, 1));
+    }
+
+    /**
+     * Uncounts an answer of the question once the surrounding transaction commits.
+     *
+     * @param questionId : Id of the answered question.
+     */
+    public void answerDeleted(final int questionId) {
+        TransactionCallbacks.afterCommit(() -> add(questionId, -1));
+    }
+
+    /**
+     * Uncounts the answers of a deleted user, which go with the ON DELETE CASCADE, once the surrounding
+     * transaction commits.
+     *
+     * @param answersByQuestion : Number of answers of the user by question id.
+     */
+    public void answersDeleted(final Map<Integer, Long> answersByQuestion) {
+        TransactionCallbacks.afterCommit(
+                () -> answersByQuestion.forEach((questionId, answers) -> add(questionId, -answers)));
+    }
+
+    /**
+     * Sends the pending deltas, in question id order so that concurrent flushes of the nodes lock the rows in the
+     * same order.
+     */
+    @Scheduled(fixedDelayString = "${quora.answer-count.flush-interval-millis:1000}")
+    public void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        final Map<Integer, Long> deltas = new TreeMap<>();
+        for (Integer questionId : pending.keySet()) {
+            final Long delta = pending.remove(questionId);
+            if (delta != null && delta != 0) {
+                deltas.put(questionId, delta);
+            }
+        }
+        if (deltas.isEmpty()) {
+            return;
+        }
+        try {
+            transactionTemplate.execute(status -> {
+                questionDao.addAnswerCounts(deltas);
+                listingVersions.answerCountsChanged();
+                invalidationBus.answerCountsChanged();
+                return null;
+            });
+            flushedQuestions.increment(deltas.size());
+        } catch (RuntimeException e) {
+            deltas.forEach(this::add);
+            LOGGER.warn("Could not flush the answer counts of {} questions, retrying", deltas.size(), e);
+        }
+    }
+
+    /**
+     * Recounts the answers of every question, a range of question ids per transaction with a pause in between.
+     */
+    @Scheduled(
+            initialDelayString = "${quora.answer-count.reconcile.initial-delay-millis:300000}",
+            fixedDelayString = "${quora.answer-count.reconcile.interval-millis:3600000}")
+    public void reconcile() {
+        if (!reconcileEnabled) {
+            return;
+        }
+        try {
+            long corrected = reconcileAll();
+            if (corrected > 0) {
+                LOGGER.info("Answer count reconciliation corrected {} questions", corrected);
+            }
+        } catch (RuntimeException e) {
+            LOGGER.error("Answer count reconciliation failed", e);
+        }
+    }
+
+    /**
+     * @return Number of questions whose answer count was corrected.
+     */
+    public long reconcileAll() {
+        final int maxId = transactionTemplate.execute(status -> questionDao.getMaxQuestionId());
+        long total = 0;
+        for (int afterId = 0; afterId < maxId; afterId += reconcileBatchSize) {
+            final int from = afterId;
+            final Map<Integer, Long> drained = new HashMap<>();
+            final Integer corrected;
+            try {
+                corrected = transactionTemplate.execute(status -> {
+                    drain(from, from + reconcileBatchSize, drained);
+                    final int rows = questionDao.reconcileAnswerCounts(from, from + reconcileBatchSize);
+                    if (rows > 0) {
+                        listingVersions.answerCountsChanged();
+                        invalidationBus.answerCountsChanged();
+                    }
+                    return rows;
+                });
+            } catch (RuntimeException e) {
+                drained.forEach(this::add);
+                throw e;
+            }
+            total += corrected;
+            correctedQuestions.increment(corrected);
+            try {
+                Thread.sleep(reconcileBatchPauseMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return total;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Sends what is left before the node goes away.
+     */
+    @PreDestroy
+    public void stop() {
+        flush();
+    }
+
+    /**
+     * Takes the pending deltas of the questions in the id range out of the map.
+     */
+    private void drain(final int afterId, final int lastId, final Map<Integer, Long> drained) {
+        for (Integer questionId : pending.keySet()) {
+            if (questionId > afterId && questionId <= lastId) {
+                final Long delta = pending.remove(questionId);
+                if (delta != null) {
+                    drained.merge(questionId, delta, Long::sum);
+                }
+            }
+        }
+    }
+
+    private void add(final Integer questionId, final long delta) {
+        pending.merge(questionId, delta, Long::sum);
+    }
+}
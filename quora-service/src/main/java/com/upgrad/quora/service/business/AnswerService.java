@@ -1,19 +1,31 @@
 package com.upgrad.quora.service.business;
 
+import com.upgrad.quora.service.common.KeysetPageToken;
+import com.upgrad.quora.service.common.Page;
+import com.upgrad.quora.service.common.RankPageToken;
+import com.upgrad.quora.service.common.VersionTag;
 import com.upgrad.quora.service.dao.AnswerDao;
 import com.upgrad.quora.service.dao.QuestionDao;
 import com.upgrad.quora.service.entity.AnswerEntity;
-import com.upgrad.quora.service.entity.QuestionEntity;
 import com.upgrad.quora.service.entity.UserAuthEntity;
 import com.upgrad.quora.service.exception.AnswerNotFoundException;
 import com.upgrad.quora.service.exception.AuthorizationFailedException;
+import com.upgrad.quora.service.exception.InvalidPaginationException;
 import com.upgrad.quora.service.exception.InvalidQuestionException;
+import com.upgrad.quora.service.exception.PreconditionFailedException;
+import com.upgrad.quora.service.exception.ServiceBusyException;
+import com.upgrad.quora.service.model.AnswerSearchHit;
+import com.upgrad.quora.service.model.AnswerSummary;
+import com.upgrad.quora.service.model.QuestionSnapshot;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.function.Consumer;
 
 @Service
 public class AnswerService {
@@ -24,6 +36,30 @@ public class AnswerService {
   @Autowired
   private  QuestionDao questionDao;
 
+  @Autowired
+  private QuestionCache questionCache;
+
+  @Autowired
+  private ContentSearchIndex contentSearchIndex;
+
+  @Autowired
+  private ListingVersions listingVersions;
+
+  @Autowired
+  private AnswerCounts answerCounts;
+
+  @Autowired
+  private InvalidationBus invalidationBus;
+
+  @Value("${quora.pagination.default-page-size:50}")
+  private int defaultPageSize;
+
+  @Value("${quora.pagination.max-page-size:100}")
+  private int maxPageSize;
+
+  @Value("${quora.streaming.page-size:500}")
+  private int streamingPageSize;
+
   /**
    * This method takes question ID, answer entity and auth token and creates a new answer.
    *
@@ -36,67 +72,180 @@ public class AnswerService {
   public AnswerEntity createAnswer(final UserAuthEntity userAuthTokenEntity, final AnswerEntity answerEntity, final String questionUuid)
           throws AuthorizationFailedException, InvalidQuestionException {
 
-    QuestionEntity questionEntity=questionDao.getQuestionByUuid(questionUuid);
-    if(questionEntity==null){
+    QuestionSnapshot question = findQuestion(questionUuid);
+    if(question==null){
       throw new InvalidQuestionException("QUES-001", "The question entered is invalid");
     }
     answerEntity.setUser(userAuthTokenEntity.getUserEntity());
-    answerEntity.setQuestion(questionEntity);
-    return answerDao.createAnswer(answerEntity);
+    answerEntity.setQuestion(questionDao.getQuestionReference(question.getId()));
+    AnswerEntity createdAnswer = answerDao.createAnswer(answerEntity);
+    contentSearchIndex.answerSaved(createdAnswer);
+    answerCounts.answerCreated(question.getId());
+    listingVersions.answersChanged(questionUuid);
+    invalidationBus.answerSaved(createdAnswer.getUuid(), questionUuid);
+    return createdAnswer;
   }
 
   /**
-   * This method takes a question ID and returns the associated answers.
+   * This method takes a question ID and returns one page of the associated answers, newest first.
+   * The question comes from the question cache, the page is read by one query over the answers of the question.
    *
-   * @param questionID - uuid of the question for which Fetch all Answers
-   * @return - List of AnswerEntity
-   * @throws AuthorizationFailedException - thrown if the user is not authorized to edit the question
+   * @param questionID - uuid of the question for which Fetch the Answers
+   * @param pageToken - token returned with the previous page, null for the first page
+   * @param limit - requested page size, null for the default, capped at the maximum page size
+   * @return - page of AnswerSummary with the token of the next page
    * @throws InvalidQuestionException - throws exception if the Provided QuestionID Not Present in DB
+   * @throws InvalidPaginationException - thrown if the page token or the page size is invalid
    */
-  public List<AnswerEntity> getAllAnswer(String questionID) throws AuthorizationFailedException, InvalidQuestionException {
-    QuestionEntity question = questionDao.getQuestionByUuid(questionID);
+  public Page<AnswerSummary> getAnswersPage(final String questionID, final String pageToken, final Integer limit)
+          throws InvalidQuestionException, InvalidPaginationException {
+    if (limit != null && limit < 1) {
+      throw new InvalidPaginationException("PAG-002", "Page size must be at least 1");
+    }
+    final int pageSize = limit == null ? defaultPageSize : Math.min(limit, maxPageSize);
+    final KeysetPageToken after = pageToken == null || pageToken.isEmpty() ? null : KeysetPageToken.decode(pageToken);
+    QuestionSnapshot question = findQuestion(questionID);
     if(question == null)
     {
       throw new InvalidQuestionException("QUES-001","The question with entered uuid whose details are to be seen does not exist");
     }
-    return answerDao.getAllAnswer(questionID);
+
+    // One row more than the page tells whether there is a next page.
+    List<AnswerSummary> answers = after == null
+            ? answerDao.getAnswersPage(question.getId(), null, null, pageSize + 1)
+            : answerDao.getAnswersPage(question.getId(), after.getDate(), after.getId(), pageSize + 1);
+    if (answers.size() <= pageSize) {
+      return new Page<>(answers, null);
+    }
+    answers = answers.subList(0, pageSize);
+    AnswerSummary last = answers.get(pageSize - 1);
+    return new Page<>(answers, new KeysetPageToken(last.getDate(), last.getId()).encode());
   }
 
   /**
-   * This method takes the answer Entity and auth token as a request and updates the answer.
+   * This method takes a question ID and returns the question, so that its answers can be streamed.
    *
-   * @param answerEntity - AnswerEntity that is to be edited
-   * @param userAuthToken - authorization header containing the accessToken
-   * @return - Deleted AnswerEntity
-   * @throws AuthorizationFailedException - thrown if the user is not authorized to edit the Answer
-   * @throws AnswerNotFoundException - thrown if the answer requested for the edit is not present in DB
+   * @param questionID - uuid of the question whose answers are listed
+   * @return - QuestionSnapshot
+   * @throws InvalidQuestionException - throws exception if the Provided QuestionID Not Present in DB
    */
-  @Transactional(propagation = Propagation.REQUIRED)
-  public AnswerEntity updateAnswer(AnswerEntity answerEntity,final UserAuthEntity userAuthToken)
-          throws AuthorizationFailedException, AnswerNotFoundException {
+  public QuestionSnapshot getQuestionForAnswers(String questionID) throws InvalidQuestionException {
+    QuestionSnapshot question = findQuestion(questionID);
+    if(question == null)
+    {
+      throw new InvalidQuestionException("QUES-001","The question with entered uuid whose details are to be seen does not exist");
+    }
+    return question;
+  }
 
-    AnswerEntity answerByID = answerDao.getAnswerByID(answerEntity.getUuid());
+  /**
+   * This method hands every answer of the question to the consumer without holding them all in memory.
+   * The answers are read in keyset pages, each by its own query, so no connection is held while the
+   * consumer runs.
+   *
+   * @param question - question returned by getQuestionForAnswers
+   * @param consumer - called once per answer
+   */
+  public void forEachAnswer(final QuestionSnapshot question, final Consumer<AnswerSummary> consumer) {
+    List<AnswerSummary> answers = answerDao.getAnswersPage(question.getId(), null, null, streamingPageSize);
+    while (!answers.isEmpty()) {
+      answers.forEach(consumer);
+      if (answers.size() < streamingPageSize) {
+        return;
+      }
+      AnswerSummary last = answers.get(answers.size() - 1);
+      answers = answerDao.getAnswersPage(question.getId(), last.getDate(), last.getId(), streamingPageSize);
+    }
+  }
 
-    if(answerByID == null){
-      throw new AnswerNotFoundException("ANS-001","Entered answer uuid does not exist");
+  /**
+   * Looks the question up in the question cache, hot questions receiving many answers are read only once.
+   */
+  private QuestionSnapshot findQuestion(final String questionUuid) {
+    return questionCache.getOrLoad(questionUuid, questionDao::getQuestionSnapshotByUuid);
+  }
+
+  /**
+   * This method returns one page of the answers matching a search in the in-memory index of this node,
+   * most relevant first, without querying the database.
+   *
+   * @param query - search text, the words are matched independently of each other
+   * @param pageToken - token returned with the previous page, null for the first page
+   * @param limit - requested page size, null for the default, capped at the maximum page size
+   * @return - page of search hits with the token of the next page
+   * @throws InvalidPaginationException - thrown if the page token or the page size is invalid
+   * @throws ServiceBusyException - thrown if the index is disabled on this node
+   */
+  public Page<AnswerSearchHit> searchAnswers(final String query, final String pageToken, final Integer limit)
+          throws InvalidPaginationException, ServiceBusyException {
+    if (limit != null && limit < 1) {
+      throw new InvalidPaginationException("PAG-002", "Page size must be at least 1");
     }
-    if(userAuthToken.getUserEntity().getId()!=answerByID.getUser().getId()){
-      throw new AuthorizationFailedException("ATHR-003","Only the answer owner can edit the answer");
+    final int pageSize = limit == null ? defaultPageSize : Math.min(limit, maxPageSize);
+    if (query == null || query.trim().isEmpty()) {
+      return new Page<>(Collections.emptyList(), null);
     }
+    final RankPageToken after = pageToken == null || pageToken.isEmpty() ? null : RankPageToken.decode(pageToken);
 
-    answerEntity.setQuestion(answerByID.getQuestion());
-    answerEntity.setUser(answerByID.getUser());
-    answerEntity.setUuid(answerByID.getUuid());
-    answerEntity.setDate(answerByID.getDate());
+    // One hit more than the page tells whether there is a next page.
+    List<AnswerSearchHit> hits = after == null
+            ? contentSearchIndex.searchAnswers(query, null, null, pageSize + 1)
+            : contentSearchIndex.searchAnswers(query, after.getRank(), after.getId(), pageSize + 1);
+    if (hits.size() <= pageSize) {
+      return new Page<>(hits, null);
+    }
+    hits = hits.subList(0, pageSize);
+    AnswerSearchHit last = hits.get(pageSize - 1);
+    return new Page<>(hits, new RankPageToken(last.getRank(), last.getId()).encode());
+  }
 
+  /**
+   * This method takes the answer uuid, the new content and auth token as a request and updates the answer with one
+   * conditional UPDATE, checked against the owner and the versions of If-Match. The answer row is not loaded; its
+   * owner and version are only read when the UPDATE matched nothing, to tell why.
+   *
+   * @param answerUuid - uuid of the Answer that is to be edited
+   * @param content - new content of the answer
+   * @param userAuthToken - authorization header containing the accessToken
+   * @param ifMatch - If-Match request header, null to edit whatever the current version is
+   * @return - new version of the answer, for its ETag
+   * @throws AuthorizationFailedException - thrown if the user is not authorized to edit the Answer
+   * @throws AnswerNotFoundException - thrown if the answer requested for the edit is not present in DB
+   * @throws PreconditionFailedException - thrown if the answer is not at a version of If-Match
+   */
+  @Transactional(propagation = Propagation.REQUIRED)
+  public int updateAnswer(final String answerUuid, final String content, final UserAuthEntity userAuthToken,
+                          final String ifMatch)
+          throws AuthorizationFailedException, AnswerNotFoundException, PreconditionFailedException {
 
-    AnswerEntity updateAnswer = answerDao.updateAnswer(answerEntity);
-    return updateAnswer;
+    final List<Integer> versions = VersionTag.parseIfMatch(ifMatch);
+    final Object[] answer = versions != null && versions.isEmpty()
+            ? null : answerDao.editAnswer(answerUuid, userAuthToken.getUserEntity().getId(), content, versions);
+    if(answer == null){
+      // Missing, someone else's, or at another version than the client read.
+      final Object[] owner = answerDao.getAnswerOwner(answerUuid);
+      if(owner == null){
+        throw new AnswerNotFoundException("ANS-001","Entered answer uuid does not exist");
+      }
+      if(!userAuthToken.getUserEntity().getId().equals(owner[0])){
+        throw new AuthorizationFailedException("ATHR-003","Only the answer owner can edit the answer");
+      }
+      throw new PreconditionFailedException("ANS-002","The answer was changed since the version in If-Match");
+    }
+    final long answerId = ((Number) answer[0]).longValue();
+    final int version = ((Number) answer[1]).intValue();
+    final int questionId = ((Number) answer[2]).intValue();
+    final String questionUuid = (String) answer[3];
 
+    contentSearchIndex.answerEdited(answerId, userAuthToken.getUserEntity().getId(), questionId, answerUuid, content);
+    listingVersions.answersChanged(questionUuid);
+    invalidationBus.answerSaved(answerUuid, questionUuid);
+    return version;
   }
 
   /**
-   * This method takes the answer Entity and auth token as a request and deletes the answer after user is verified.
+   * This method takes the answer uuid and auth token as a request and deletes the answer with one DELETE, which
+   * only matches an answer of the user unless the user is an admin.
    *
    * @param answerID - uuid of Answer that to be deleted
    * @param userAuthToken - authorization header containing the accessToken
@@ -106,17 +255,23 @@ public class AnswerService {
   @Transactional(propagation = Propagation.REQUIRED)
   public void deleteAnswer(String answerID,final UserAuthEntity userAuthToken) throws AuthorizationFailedException, AnswerNotFoundException {
 
-    AnswerEntity answerByID = answerDao.getAnswerByID(answerID);
-
-    if(answerByID == null){
-      throw new AnswerNotFoundException("ANS-001","Entered answer uuid does not exist");
-    }
-
-    if(userAuthToken.getUserEntity().getId()!=answerByID.getUser().getId() && ! userAuthToken.getUserEntity().getRole().equals("admin")){
+    final boolean admin = "admin".equals(userAuthToken.getUserEntity().getRole());
+    final Object[] answer = answerDao.deleteAnswer(answerID, admin ? null : userAuthToken.getUserEntity().getId());
+    if(answer == null){
+      // Missing or someone else's.
+      if(answerDao.getAnswerOwner(answerID) == null){
+        throw new AnswerNotFoundException("ANS-001","Entered answer uuid does not exist");
+      }
       throw new AuthorizationFailedException("ATHR-003","Only the answer owner can edit the answer");
     }
+    final long answerId = ((Number) answer[0]).longValue();
+    final int questionId = ((Number) answer[1]).intValue();
+    final String questionUuid = (String) answer[2];
 
-    answerDao.deleteAnswer(answerByID);
+    contentSearchIndex.answerDeleted(answerId);
+    answerCounts.answerDeleted(questionId);
+    listingVersions.answersChanged(questionUuid);
+    invalidationBus.answerDeleted(answerId, questionUuid);
   }
 
 
@@ -1,5 +1,6 @@
 package com.upgrad.quora.service.business;
 
+import com.auth0.jwt.interfaces.DecodedJWT;
 import com.upgrad.quora.service.dao.UserAuthDao;
 import com.upgrad.quora.service.dao.UserDao;
 import com.upgrad.quora.service.entity.UserAuthEntity;
@@ -7,8 +8,10 @@ import com.upgrad.quora.service.entity.UserEntity;
 import com.upgrad.quora.service.exception.AuthorizationFailedException;
 import com.upgrad.quora.service.exception.UserNotFoundException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.time.ZoneId;
 import java.time.ZonedDateTime;
 
 @Service
@@ -18,6 +21,22 @@ public class CommonService {
 
     @Autowired private UserAuthDao userAuthDao;
 
+    @Autowired private AccessTokenCache accessTokenCache;
+
+    @Autowired private JwtTokenProvider jwtTokenProvider;
+
+    @Autowired private TokenDenylist tokenDenylist;
+
+    @Autowired private AccessTokenBloomFilter accessTokenBloomFilter;
+
+    /**
+     * Tokens issued this long before the last refresh of the token filter may be missing from it.
+     */
+    private static final long TOKEN_FILTER_MARGIN_MILLIS = 60 * 1000L;
+
+    @Value("${quora.jwt.stateless-verification:true}")
+    private boolean statelessVerification;
+
     /**
      * Fetch the UserEntity based on passed userId.
      *
@@ -38,6 +57,7 @@ public class CommonService {
      * Authentication for a user trying to access details.
      * This method also validates whether the user requesting details is signed in or not.
      * Throws exception if so, or returns the auth.
+     * Tokens signed with a key on the JwtKeyRing are verified in memory, everything else is looked up in USER_AUTH.
      *
      * @param authToken of the querying user.
      * @return UserAuthEntity
@@ -45,7 +65,10 @@ public class CommonService {
      */
     public UserAuthEntity authorizeUser(final String authToken)
             throws AuthorizationFailedException {
-        UserAuthEntity userAuthEntity = userAuthDao.getUserAuthByToken(authToken);
+        UserAuthEntity userAuthEntity = statelessVerification ? verifyStateless(authToken) : null;
+        if (userAuthEntity == null) {
+            userAuthEntity = accessTokenCache.getOrLoad(authToken, this::loadUserAuth);
+        }
         if (userAuthEntity == null) {
             throw new AuthorizationFailedException("ATHR-001", "User has not signed in");
         } else {
@@ -58,4 +81,54 @@ public class CommonService {
             }
         }
     }
+
+    /**
+     * Looks the token up in USER_AUTH, unless the token filter shows it was never issued.
+     *
+     * @param authToken of the querying user.
+     * @return UserAuthEntity or null.
+     */
+    private UserAuthEntity loadUserAuth(final String authToken) {
+        if (!accessTokenBloomFilter.mightContain(authToken)
+                && jwtTokenProvider.getIssuedAtMillis(authToken)
+                < accessTokenBloomFilter.getLastRefreshedAt() - TOKEN_FILTER_MARGIN_MILLIS) {
+            return null;
+        }
+        return userAuthDao.getUserAuthByToken(authToken);
+    }
+
+    /**
+     * Builds the session from the claims of a verified token, without touching the database.
+     *
+     * @param authToken of the querying user.
+     * @return UserAuthEntity, or null if the token could not be verified in memory.
+     * @throws AuthorizationFailedException If the token was signed out or its user deleted.
+     */
+    private UserAuthEntity verifyStateless(final String authToken) throws AuthorizationFailedException {
+        DecodedJWT decodedToken = jwtTokenProvider.verifyToken(authToken);
+        if (decodedToken == null) {
+            return null;
+        }
+        if (tokenDenylist.isRevoked(decodedToken.getId(), decodedToken.getSubject(),
+                decodedToken.getIssuedAt().getTime())) {
+            throw new AuthorizationFailedException(
+                    "ATHR-002", "User is signed out.Sign in first to get user details");
+        }
+        if (!tokenDenylist.isTrusted(decodedToken.getIssuedAt().getTime())) {
+            return null;
+        }
+
+        UserEntity userEntity = new UserEntity();
+        userEntity.setId(decodedToken.getClaim(JwtTokenProvider.USER_ID_CLAIM).asInt());
+        userEntity.setUuid(decodedToken.getSubject());
+        userEntity.setRole(decodedToken.getClaim(JwtTokenProvider.ROLE_CLAIM).asString());
+
+        UserAuthEntity userAuthEntity = new UserAuthEntity();
+        userAuthEntity.setUuid(decodedToken.getId());
+        userAuthEntity.setUserEntity(userEntity);
+        userAuthEntity.setAccessToken(authToken);
+        userAuthEntity.setLoginAt(ZonedDateTime.ofInstant(decodedToken.getIssuedAt().toInstant(), ZoneId.systemDefault()));
+        userAuthEntity.setExpiresAt(ZonedDateTime.ofInstant(decodedToken.getExpiresAt().toInstant(), ZoneId.systemDefault()));
+        return userAuthEntity;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,349 @@
+package com.upgrad.quora.service.business;
+
+import com.upgrad.quora.service.common.TransactionCallbacks;
+import com.upgrad.quora.service.dao.AnswerDao;
+import com.upgrad.quora.service.dao.QuestionDao;
+import com.upgrad.quora.service.entity.AnswerEntity;
+import com.upgrad.quora.service.entity.QuestionEntity;
+import com.upgrad.quora.service.exception.ServiceBusyException;
+import com.upgrad.quora.service.model.AnswerSearchHit;
+import com.upgrad.quora.service.model.DuplicateQuestion;
+import com.upgrad.quora.service.model.QuestionSearchHit;
+import com.upgrad.quora.service.model.QuestionSnapshot;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * In-memory BM25 search over the question contents and the answers, so that searches are served by the node
+ * without a database query, and a SimHash index of the question contents to find near-duplicate questions.
+ * Both indexes are loaded at startup and updated once question and answer changes commit, changes made on the
+ * other nodes arrive through the InvalidationBus.
+ * A rebuild loads fresh indexes while the current ones keep serving, and replays the changes committed meanwhile
+ * before swapping them in.
+ */
+@Component
+public class ContentSearchIndex {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ContentSearchIndex.class);
+
+    private static final int LOAD_BATCH_SIZE = 10000;
+
+    @Value("${quora.search.index.enabled:true}")
+    private boolean enabled;
+
+    @Autowired private QuestionDao questionDao;
+
+    @Autowired private AnswerDao answerDao;
+
+    @Autowired private MeterRegistry meterRegistry;
+
+    private volatile Indexes indexes = new Indexes();
+
+    /**
+     * Changes committed while a rebuild is loading, guarded by this.
+     */
+    private List<Consumer<Indexes>> pending;
+
+    @PostConstruct
+    public void load() {
+        Gauge.builder("quora.search.index.questions", this, index -> index.indexes.questions.size())
+                .register(meterRegistry);
+        Gauge.builder("quora.search.index.answers", this, index -> index.indexes.answers.size())
+                .register(meterRegistry);
+        Gauge.builder("quora.search.index.duplicates", this, index -> index.indexes.duplicates.size())
+                .register(meterRegistry);
+        if (enabled) {
+            rebuild();
+        }
+    }
+
+    /**
+     * Loads both indexes from the database and swaps them in, searches keep using the current ones meanwhile.
+     */
+    public void rebuild() {
+        if (!enabled) {
+            return;
+        }
+        synchronized (this) {
+            if (pending != null) {
+                return;
+            }
+            pending = new ArrayList<>();
+        }
+        try {
+            final Indexes loaded = new Indexes();
+            loadQuestions(loaded);
+            loadAnswers(loaded.answers);
+            synchronized (this) {
+                pending.forEach(change -> change.accept(loaded));
+                indexes = loaded;
+            }
+            LOGGER.info("Search index loaded {} questions and {} answers",
+                    loaded.questions.size(), loaded.answers.size());
+        } finally {
+            synchronized (this) {
+                pending = null;
+            }
+        }
+    }
+
+    /**
+     * Drops replaced and removed documents once they make up a fifth of an index.
+     */
+    @Scheduled(fixedDelayString = "${quora.search.index.compact-interval-millis:60000}")
+    public void compact() {
+        final Indexes current = indexes;
+        for (SearchIndex index : Arrays.asList(current.questions, current.answers)) {
+            if (index.deadCount() * 4 > index.size()) {
+                index.compact();
+            }
+        }
+        if (current.duplicates.deadCount() * 4 > current.duplicates.size()) {
+            current.duplicates.compact();
+        }
+    }
+
+    /**
+     * Indexes the created or edited question once the surrounding transaction commits.
+     *
+     * @param questionEntity : Persisted question.
+     */
+    public void questionSaved(final QuestionEntity questionEntity) {
+        questionSaved(questionEntity.getId(), questionEntity.getUserEntity().getId(), questionEntity.getUuid(),
+                questionEntity.getContent());
+    }
+
+    /**
+     * Indexes the edited question once the surrounding transaction commits.
+     *
+     * @param question : Question with its new content.
+     */
+    public void questionEdited(final QuestionSnapshot question) {
+        questionSaved(question.getId(), question.getUserId(), question.getUuid(), question.getContent());
+    }
+
+    private void questionSaved(final int id, final int owner, final String uuid, final String content) {
+        apply(current -> {
+            current.questions.put(id, owner, SearchIndex.NO_PARENT, uuid, content);
+            current.duplicates.put(id, uuid, content);
+        });
+    }
+
+    /**
+     * Removes the question and its answers, which go with the ON DELETE CASCADE, once the transaction commits.
+     *
+     * @param questionId : Id of the deleted question.
+     */
+    public void questionDeleted(final int questionId) {
+        apply(current -> {
+            current.questions.remove(questionId);
+            current.duplicates.remove(questionId);
+            current.answers.removeIf((id, owner, parent) -> parent == questionId);
+        });
+    }
+
+    /**
+     * Indexes the created or edited answer once the surrounding transaction commits.
+     *
+     * @param answerEntity : Persisted answer.
+     */
+    public void answerSaved(final AnswerEntity answerEntity) {
+        answerEdited(answerEntity.getId(), answerEntity.getUser().getId(), answerEntity.getQuestion().getId(),
+                answerEntity.getUuid(), answerEntity.getAns());
+    }
+
+    /**
+     * Indexes the edited answer once the surrounding transaction commits.
+     *
+     * @param answerId : Id of the answer.
+     * @param ownerId : Id of the user who posted the answer.
+     * @param questionId : Id of the answered question.
+     * @param uuid : Uuid of the answer.
+     * @param ans : New content of the answer.
+     */
+    public void answerEdited(final long answerId, final int ownerId, final int questionId, final String uuid,
+                             final String ans) {
+        final int id = Math.toIntExact(answerId);
+        apply(current -> current.answers.put(id, ownerId, questionId, uuid, ans));
+    }
+
+    /**
+     * Removes the answer once the surrounding transaction commits.
+     *
+     * @param answerId : Id of the deleted answer.
+     */
+    public void answerDeleted(final long answerId) {
+        final int id = Math.toIntExact(answerId);
+        apply(current -> current.answers.remove(id));
+    }
+
+    /**
+     * Removes the questions and answers of the user, and the answers to the user's questions,
+     * which all go with the ON DELETE CASCADE, once the transaction commits.
+     *
+     * @param userId : Id of the deleted user.
+     */
+    public void userDeleted(final int userId) {
+        apply(current -> {
+            final int[] questionIds = current.questions.removeIf((id, owner, parent) -> owner == userId);
+            for (int questionId : questionIds) {
+                current.duplicates.remove(questionId);
+            }
+            current.answers.removeIf((id, owner, parent) ->
+                    owner == userId || Arrays.binarySearch(questionIds, parent) >= 0);
+        });
+    }
+
+    /**
+     * Reindexes a question changed on another node from the database.
+     *
+     * @param uuid : Uuid of the question.
+     */
+    public void reloadQuestion(final String uuid) {
+        final QuestionEntity questionEntity = questionDao.getQuestionByUuid(uuid);
+        if (questionEntity != null) {
+            questionSaved(questionEntity);
+        }
+    }
+
+    /**
+     * Reindexes an answer changed on another node from the database.
+     *
+     * @param uuid : Uuid of the answer.
+     */
+    public void reloadAnswer(final String uuid) {
+        final AnswerEntity answerEntity = answerDao.getAnswerByID(uuid);
+        if (answerEntity != null) {
+            answerSaved(answerEntity);
+        }
+    }
+
+    /**
+     * @param query : Search text.
+     * @param afterRank : Rank of the last hit of the previous page, null for the first page.
+     * @param afterId : Id of the last hit of the previous page.
+     * @param limit : Maximum number of hits to return.
+     * @return questions ordered by rank and id, descending.
+     * @throws ServiceBusyException : If the index is disabled on this node.
+     */
+    public List<QuestionSearchHit> searchQuestions(final String query, final Float afterRank, final Integer afterId,
+                                                   final int limit) throws ServiceBusyException {
+        checkEnabled();
+        final List<QuestionSearchHit> hits = new ArrayList<>();
+        for (SearchIndex.Hit hit : indexes.questions.search(query, limit, afterRank, afterId)) {
+            hits.add(new QuestionSearchHit(hit.getId(), hit.getUuid(), hit.getText(), hit.getScore()));
+        }
+        return hits;
+    }
+
+    /**
+     * @param query : Search text.
+     * @param afterRank : Rank of the last hit of the previous page, null for the first page.
+     * @param afterId : Id of the last hit of the previous page.
+     * @param limit : Maximum number of hits to return.
+     * @return answers with the content of their question, ordered by rank and id, descending.
+     * @throws ServiceBusyException : If the index is disabled on this node.
+     */
+    public List<AnswerSearchHit> searchAnswers(final String query, final Float afterRank, final Integer afterId,
+                                               final int limit) throws ServiceBusyException {
+        checkEnabled();
+        final Indexes current = indexes;
+        final List<AnswerSearchHit> hits = new ArrayList<>();
+        for (SearchIndex.Hit hit : current.answers.search(query, limit, afterRank, afterId)) {
+            hits.add(new AnswerSearchHit(hit.getId(), hit.getUuid(), hit.getText(),
+                    current.questions.text(hit.getParent()), hit.getScore()));
+        }
+        return hits;
+    }
+
+    /**
+     * Finds the questions whose content is nearly the same as the given content. Returns nothing when the index
+     * is disabled on this node, so that question creation keeps working.
+     *
+     * @param content : Content of a new question.
+     * @param maxDistance : Largest number of differing SimHash bits, at most SimHashIndex.MAX_DISTANCE.
+     * @param limit : Maximum number of questions to return.
+     * @return the closest questions first.
+     */
+    public List<DuplicateQuestion> findDuplicateQuestions(final String content, final int maxDistance,
+                                                          final int limit) {
+        if (!enabled) {
+            return Collections.emptyList();
+        }
+        final Indexes current = indexes;
+        final List<DuplicateQuestion> duplicates = new ArrayList<>();
+        for (SimHashIndex.Match match : current.duplicates.find(content, maxDistance, limit)) {
+            duplicates.add(new DuplicateQuestion(match.getId(), match.getUuid(),
+                    current.questions.text(match.getId()), match.getDistance()));
+        }
+        return duplicates;
+    }
+
+    private void checkEnabled() throws ServiceBusyException {
+        if (!enabled) {
+            throw new ServiceBusyException("GEN-003", "Search index is not enabled on this server");
+        }
+    }
+
+    private void apply(final Consumer<Indexes> change) {
+        if (!enabled) {
+            return;
+        }
+        TransactionCallbacks.afterCommit(() -> {
+            synchronized (this) {
+                change.accept(indexes);
+                if (pending != null) {
+                    pending.add(change);
+                }
+            }
+        });
+    }
+
+    private void loadQuestions(final Indexes loaded) {
+        int lastId = 0;
+        List<Object[]> batch;
+        do {
+            batch = questionDao.getQuestionContentsAfter(lastId, LOAD_BATCH_SIZE);
+            for (Object[] row : batch) {
+                lastId = (Integer) row[0];
+                loaded.questions.put(lastId, (Integer) row[1], SearchIndex.NO_PARENT, (String) row[2], (String) row[3]);
+                loaded.duplicates.put(lastId, (String) row[2], (String) row[3]);
+            }
+        } while (batch.size() == LOAD_BATCH_SIZE);
+    }
+
+    private void loadAnswers(final SearchIndex index) {
+        long lastId = 0;
+        List<Object[]> batch;
+        do {
+            batch = answerDao.getAnswerContentsAfter(lastId, LOAD_BATCH_SIZE);
+            for (Object[] row : batch) {
+                lastId = ((Number) row[0]).longValue();
+                index.put(Math.toIntExact(lastId), (Integer) row[1], (Integer) row[2], (String) row[3],
+                        (String) row[4]);
+            }
+        } while (batch.size() == LOAD_BATCH_SIZE);
+    }
+
+    private static final class Indexes {
+
+        private final SearchIndex questions = new SearchIndex();
+
+        private final SearchIndex answers = new SearchIndex();
+
+        private final SimHashIndex duplicates = new SimHashIndex();
+    }
+}
@@ -0,0 +1,367 @@
+package com.upgrad.quora.service.business;
+
+import com.upgrad.quora.service.dao.NotificationDao;
+import com.upgrad.quora.service.entity.QuestionEntity;
+import com.upgrad.quora.service.entity.UserAuthEntity;
+import com.upgrad.quora.service.entity.UserEntity;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.Base64;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Keeps the in-memory session, user and search state of every node in line with changes made on the other nodes.
+ * Signouts, user deletions, signups and question and answer changes are published with pg_notify inside the transaction making the change,
+ * so Postgres delivers them only if it commits. Each node listens on one dedicated connection outside of the pool
+ * and applies the events of the other nodes to its TokenDenylist, AccessTokenCache, UserMembershipIndex, QuestionCache,
+ * ContentSearchIndex, ListingVersions and LatestQuestions.
+ * Events sent while a node is not listening are lost, so once LISTEN has executed, on the first connect as after a
+ * reconnect, the node clears its caches, reloads what can be reloaded and stops trusting statelessly verified
+ * tokens issued before. On the first connect this covers the events sent between the startup loads of the other
+ * components and the LISTEN.
+ */
+@Component
+public class InvalidationBus {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(InvalidationBus.class);
+
+    private static final String SESSION_REVOKED = "session";
+
+    private static final String USER_DELETED = "user-deleted";
+
+    private static final String USER_CREATED = "user-created";
+
+    private static final String QUESTION_SAVED = "question-saved";
+
+    private static final String QUESTION_DELETED = "question-deleted";
+
+    private static final String ANSWER_SAVED = "answer-saved";
+
+    private static final String ANSWER_DELETED = "answer-deleted";
+
+    private static final String ANSWER_COUNTS = "answer-counts";
+
+    private static final String SEPARATOR = "|";
+
+    private static final int UUIDS_PER_EVENT = 100;
+
+    @Value("${quora.invalidation.enabled:true}")
+    private boolean enabled;
+
+    @Value("${quora.invalidation.channel:quora_invalidation}")
+    private String channel;
+
+    @Value("${quora.invalidation.poll-millis:500}")
+    private int pollMillis;
+
+    @Value("${quora.invalidation.reconnect-delay-millis:5000}")
+    private long reconnectDelayMillis;
+
+    @Value("${spring.datasource.url}")
+    private String url;
+
+    @Value("${spring.datasource.username}")
+    private String username;
+
+    @Value("${spring.datasource.password}")
+    private String password;
+
+    @Autowired private NotificationDao notificationDao;
+
+    @Autowired private AccessTokenCache accessTokenCache;
+
+    @Autowired private TokenDenylist tokenDenylist;
+
+    @Autowired private UserMembershipIndex userMembershipIndex;
+
+    @Autowired private QuestionCache questionCache;
+
+    @Autowired private ContentSearchIndex contentSearchIndex;
+
+    @Autowired private ListingVersions listingVersions;
+
+    @Autowired private LatestQuestions latestQuestions;
+
+    @Autowired private MeterRegistry meterRegistry;
+
+    /**
+     * Identifies the events of this node, which are already applied locally when they are published.
+     */
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private volatile boolean running;
+
+    private Thread listener;
+
+    private Counter received;
+
+    private Counter reconnects;
+
+    @PostConstruct
+    public void start() {
+        received = Counter.builder("quora.invalidation.received").register(meterRegistry);
+        reconnects = Counter.builder("quora.invalidation.reconnects").register(meterRegistry);
+        if (!enabled) {
+            return;
+        }
+        if (!channel.matches("[a-z_][a-z0-9_]*")) {
+            throw new IllegalStateException("Invalid invalidation channel name: " + channel);
+        }
+        running = true;
+        listener = new Thread(this::listen, "quora-invalidation-listener");
+        listener.setDaemon(true);
+        listener.start();
+    }
+
+    /**
+     * Stops listening and waits for the listener to close its connection, the events sent from then on are missed
+     * until start listens again.
+     */
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (listener != null) {
+            listener.interrupt();
+            try {
+                listener.join(pollMillis * 2L);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Tells the other nodes that a session was signed out, must be called inside the signout transaction.
+     *
+     * @param userAuthEntity : Session which was signed out.
+     */
+    public void sessionRevoked(final UserAuthEntity userAuthEntity) {
+        publish(SESSION_REVOKED, userAuthEntity.getUuid(),
+                String.valueOf(userAuthEntity.getExpiresAt().toInstant().toEpochMilli()));
+    }
+
+    /**
+     * Tells the other nodes that a user was deleted, must be called inside the deleting transaction.
+     *
+     * @param userEntity : User which was deleted.
+     */
+    public void userDeleted(final UserEntity userEntity) {
+        publish(USER_DELETED, String.valueOf(userEntity.getId()), userEntity.getUuid(),
+                encode(userEntity.getUserName()), encode(userEntity.getEmail()));
+    }
+
+    /**
+     * Tells the other nodes that a user signed up, must be called inside the signup transaction.
+     *
+     * @param userEntity : User which was created.
+     */
+    public void userCreated(final UserEntity userEntity) {
+        publish(USER_CREATED, encode(userEntity.getUserName()), encode(userEntity.getEmail()));
+    }
+
+    /**
+     * Tells the other nodes that a question was created or edited, must be called inside the saving transaction.
+     * They read the committed content back from the database.
+     *
+     * @param questionUuid : Uuid of the question which was saved.
+     */
+    public void questionSaved(final String questionUuid) {
+        publish(QUESTION_SAVED, questionUuid);
+    }
+
+    /**
+     * Tells the other nodes that questions were created, must be called inside the saving transaction.
+     * The uuids go out in chunks, well below the 8000 byte payload limit of pg_notify.
+     *
+     * @param questionEntities : Questions which were saved.
+     */
+    public void questionsSaved(final List<QuestionEntity> questionEntities) {
+        for (int from = 0; from < questionEntities.size(); from += UUIDS_PER_EVENT) {
+            final List<QuestionEntity> chunk =
+                    questionEntities.subList(from, Math.min(from + UUIDS_PER_EVENT, questionEntities.size()));
+            publish(QUESTION_SAVED, chunk.stream().map(QuestionEntity::getUuid).toArray(String[]::new));
+        }
+    }
+
+    /**
+     * Tells the other nodes that a question was deleted, must be called inside the deleting transaction.
+     *
+     * @param questionId : Id of the question which was deleted.
+     * @param questionUuid : Uuid of the question which was deleted.
+     */
+    public void questionDeleted(final int questionId, final String questionUuid) {
+        publish(QUESTION_DELETED, String.valueOf(questionId), questionUuid);
+    }
+
+    /**
+     * Tells the other nodes that an answer was created or edited, must be called inside the saving transaction.
+     * They read the committed content back from the database.
+     *
+     * @param answerUuid : Uuid of the answer which was saved.
+     * @param questionUuid : Uuid of the answered question, whose answer listing changed.
+     */
+    public void answerSaved(final String answerUuid, final String questionUuid) {
+        publish(ANSWER_SAVED, answerUuid, questionUuid);
+    }
+
+    /**
+     * Tells the other nodes that an answer was deleted, must be called inside the deleting transaction.
+     *
+     * @param answerId : Id of the answer which was deleted.
+     * @param questionUuid : Uuid of the answered question, whose answer listing changed.
+     */
+    public void answerDeleted(final long answerId, final String questionUuid) {
+        publish(ANSWER_DELETED, String.valueOf(answerId), questionUuid);
+    }
+
+    /**
+     * Tells the other nodes that answer counts were written, must be called inside the writing transaction.
+     */
+    public void answerCountsChanged() {
+        publish(ANSWER_COUNTS);
+    }
+
+    private void publish(final String type, final String... fields) {
+        if (!enabled) {
+            return;
+        }
+        StringBuilder payload = new StringBuilder(nodeId).append(SEPARATOR).append(type);
+        for (String field : fields) {
+            payload.append(SEPARATOR).append(field);
+        }
+        notificationDao.notify(channel, payload.toString());
+    }
+
+    private void listen() {
+        while (running) {
+            try (Connection connection = DriverManager.getConnection(url, username, password)) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + channel);
+                }
+                resync();
+                LOGGER.info("Listening for invalidations on {}", channel);
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications(pollMillis);
+                    if (notifications != null) {
+                        for (PGNotification notification : notifications) {
+                            apply(notification.getParameter());
+                        }
+                    }
+                }
+            } catch (SQLException | RuntimeException e) {
+                if (!running) {
+                    return;
+                }
+                LOGGER.warn("Invalidation listener lost its connection, reconnecting", e);
+            }
+            reconnects.increment();
+            try {
+                Thread.sleep(reconnectDelayMillis);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Brings the local state back in line after events may have been missed, the events sent from now on are
+     * received.
+     */
+    private void resync() {
+        final long now = System.currentTimeMillis();
+        tokenDenylist.distrustIssuedBefore(now);
+        accessTokenCache.clear();
+        tokenDenylist.loadRevokedSessions();
+        userMembershipIndex.load();
+        questionCache.clear();
+        listingVersions.allChanged();
+        latestQuestions.reload();
+        contentSearchIndex.rebuild();
+        LOGGER.info("Resynchronized session, user and search state after listening on {}", channel);
+    }
+
+    private void apply(final String payload) {
+        final String[] fields = payload.split("\\" + SEPARATOR, -1);
+        if (fields.length < 2 || nodeId.equals(fields[0])) {
+            return;
+        }
+        received.increment();
+        try {
+            switch (fields[1]) {
+                case SESSION_REVOKED:
+                    tokenDenylist.revoke(fields[2],
+                            Instant.ofEpochMilli(Long.parseLong(fields[3])).atZone(ZoneId.systemDefault()));
+                    accessTokenCache.invalidateSession(fields[2]);
+                    break;
+                case USER_DELETED:
+                    accessTokenCache.invalidateUser(Integer.valueOf(fields[2]));
+                    tokenDenylist.revokeUser(fields[3]);
+                    userMembershipIndex.userDeleted(decode(fields[4]), decode(fields[5]));
+                    questionCache.invalidateUser(Integer.valueOf(fields[2]));
+                    contentSearchIndex.userDeleted(Integer.parseInt(fields[2]));
+                    listingVersions.allChanged();
+                    latestQuestions.userDeleted(Integer.parseInt(fields[2]));
+                    break;
+                case USER_CREATED:
+                    userMembershipIndex.userCreated(decode(fields[2]), decode(fields[3]));
+                    break;
+                case QUESTION_SAVED:
+                    for (int i = 2; i < fields.length; i++) {
+                        questionCache.invalidate(fields[i]);
+                        contentSearchIndex.reloadQuestion(fields[i]);
+                        listingVersions.questionChanged(fields[i]);
+                        latestQuestions.reloadQuestion(fields[i]);
+                    }
+                    break;
+                case QUESTION_DELETED:
+                    questionCache.invalidate(fields[3]);
+                    contentSearchIndex.questionDeleted(Integer.parseInt(fields[2]));
+                    listingVersions.questionChanged(fields[3]);
+                    latestQuestions.questionDeleted(Integer.parseInt(fields[2]));
+                    break;
+                case ANSWER_SAVED:
+                    contentSearchIndex.reloadAnswer(fields[2]);
+                    listingVersions.answersChanged(fields[3]);
+                    break;
+                case ANSWER_DELETED:
+                    contentSearchIndex.answerDeleted(Long.parseLong(fields[2]));
+                    listingVersions.answersChanged(fields[3]);
+                    break;
+                case ANSWER_COUNTS:
+                    listingVersions.answerCountsChanged();
+                    break;
+                default:
+                    LOGGER.warn("Ignoring unknown invalidation {}", fields[1]);
+            }
+        } catch (RuntimeException e) {
+            LOGGER.warn("Ignoring malformed invalidation {}", payload, e);
+        }
+    }
+
+    private static String encode(final String value) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String decode(final String value) {
+        return new String(Base64.getUrlDecoder().decode(value), StandardCharsets.UTF_8);
+    }
+}
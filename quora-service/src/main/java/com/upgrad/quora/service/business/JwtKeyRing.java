@@ -0,0 +1,139 @@
+package com.upgrad.quora.service.business;
+
+import com.auth0.jwt.algorithms.Algorithm;
+import com.upgrad.quora.service.common.GenericErrorCode;
+import com.upgrad.quora.service.common.UnexpectedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Server side signing keys for access tokens, addressed by the key id that goes into the JWT "kid" header.
+ * New tokens are signed with the active key, every key still on the ring can verify.
+ *
+ * Keys are configured as "kid:secret" pairs in quora.jwt.keys. Rotation is done by adding a new key and making it
+ * active, and removing the old one once the tokens it signed have expired.
+ */
+@Component
+public class JwtKeyRing {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JwtKeyRing.class);
+
+    @Value("${quora.jwt.keys:}")
+    private String configuredKeys;
+
+    @Value("${quora.jwt.active-key-id:}")
+    private String configuredActiveKeyId;
+
+    private final Map<String, Algorithm> keys = new ConcurrentHashMap<>();
+
+    private volatile String activeKeyId;
+
+    @PostConstruct
+    public void loadConfiguredKeys() {
+        for (String entry : configuredKeys.split(",")) {
+            String trimmed = entry.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            int separator = trimmed.indexOf(':');
+            if (separator <= 0) {
+                throw new UnexpectedException(GenericErrorCode.GEN_001);
+            }
+            addKey(trimmed.substring(0, separator), trimmed.substring(separator + 1));
+        }
+
+        if (keys.isEmpty()) {
+            // Tokens signed with a generated key only verify on this node and stop verifying after a restart.
+            LOGGER.warn("No quora.jwt.keys configured, generating an ephemeral signing key");
+            rotate(generateKeyId(), generateSecret());
+        } else if (!configuredActiveKeyId.isEmpty()) {
+            activate(configuredActiveKeyId);
+        } else {
+            activate(keys.keySet().iterator().next());
+        }
+    }
+
+    /**
+     * Adds a key to the ring without making it active, so it can verify tokens signed elsewhere.
+     *
+     * @param keyId : value of the "kid" header.
+     * @param secret : HMAC secret.
+     */
+    public void addKey(final String keyId, final String secret) {
+        try {
+            keys.put(keyId, Algorithm.HMAC512(secret));
+        } catch (IllegalArgumentException e) {
+            throw new UnexpectedException(GenericErrorCode.GEN_001, e);
+        }
+    }
+
+    /**
+     * Adds a key and signs every new token with it. Previously active keys stay on the ring for verification.
+     *
+     * @param keyId : value of the "kid" header.
+     * @param secret : HMAC secret.
+     */
+    public void rotate(final String keyId, final String secret) {
+        addKey(keyId, secret);
+        activate(keyId);
+    }
+
+    /**
+     * Makes a key already on the ring the signing key.
+     *
+     * @param keyId : id of the key to activate.
+     */
+    public void activate(final String keyId) {
+        if (!keys.containsKey(keyId)) {
+            throw new UnexpectedException(GenericErrorCode.GEN_001);
+        }
+        activeKeyId = keyId;
+    }
+
+    /**
+     * Removes a key from the ring, tokens signed with it no longer verify statelessly.
+     *
+     * @param keyId : id of the key to remove.
+     */
+    public void retire(final String keyId) {
+        if (keyId.equals(activeKeyId)) {
+            throw new UnexpectedException(GenericErrorCode.GEN_001);
+        }
+        keys.remove(keyId);
+    }
+
+    public String getActiveKeyId() {
+        return activeKeyId;
+    }
+
+    public Algorithm getActiveAlgorithm() {
+        return keys.get(activeKeyId);
+    }
+
+    /**
+     * @param keyId : value of the "kid" header of a token.
+     * @return the algorithm for the key or null if the key is not on the ring.
+     */
+    public Algorithm getAlgorithm(final String keyId) {
+        return keyId == null ? null : keys.get(keyId);
+    }
+
+    private static String generateKeyId() {
+        return "local-" + UUID.randomUUID().toString();
+    }
+
+    private static String generateSecret() {
+        byte[] secret = new byte[64];
+        new SecureRandom().nextBytes(secret);
+        return Base64.getEncoder().encodeToString(secret);
+    }
+}
@@ -1,54 +1,103 @@
 package com.upgrad.quora.service.business;
 
 import com.auth0.jwt.JWT;
-import com.auth0.jwt.algorithms.Algorithm;
-import com.upgrad.quora.service.common.GenericErrorCode;
-import com.upgrad.quora.service.common.UnexpectedException;
+import com.auth0.jwt.exceptions.JWTVerificationException;
+import com.auth0.jwt.interfaces.DecodedJWT;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
 
 import java.time.ZonedDateTime;
-import java.time.temporal.ChronoField;
 import java.util.Date;
-import java.util.UUID;
 
 /**
  * This class is used in the project to provide JWT token after successful authentication
+ * and to verify those tokens without a database lookup.
  */
+@Component
 public class JwtTokenProvider {
     private static final String TOKEN_ISSUER = "https://quora.io";
 
-    private final Algorithm algorithm;
+    private static final String TOKEN_AUDIENCE = "https://quora.io/api";
+
+    static final String USER_ID_CLAIM = "uid";
+
+    static final String ROLE_CLAIM = "role";
+
+    private final JwtKeyRing keyRing;
 
     /**
-     * A constructor for JwtTokenProvider class which receives user password as an argument to be used in the signature part of JWT access token.
+     * A constructor for JwtTokenProvider class which receives the key ring holding the server side signing keys.
      */
-    public JwtTokenProvider(final String secret) {
-        try {
-            algorithm = Algorithm.HMAC512(secret);
-        } catch (IllegalArgumentException e) {
-            throw new UnexpectedException(GenericErrorCode.GEN_001);
-        }
+    @Autowired
+    public JwtTokenProvider(final JwtKeyRing keyRing) {
+        this.keyRing = keyRing;
     }
 
 
     /**
-     * This method receives uuid of the user, current time and expiry time of the access token.
+     * This method receives the session and user details, current time and expiry time of the access token.
      * This information is stored in the payload of the JWT token and the JWT token is returned by this method.
      */
     /**
+     * @param sessionUuid     - uuid of the USER_AUTH row, used as the token id
+     * @param userId          - id of the user
      * @param userUuid        - uuid of the user
+     * @param role            - role of the user
      * @param issuedDateTime  - current time
      * @param expiresDateTime - expiry time of the JWT token
      * @return - generated JWT token
      */
-    public String generateToken(final String userUuid, final ZonedDateTime issuedDateTime, final ZonedDateTime expiresDateTime) {
+    public String generateToken(final String sessionUuid, final Integer userId, final String userUuid, final String role,
+                                final ZonedDateTime issuedDateTime, final ZonedDateTime expiresDateTime) {
 
-        final Date issuedAt = new Date(issuedDateTime.getLong(ChronoField.INSTANT_SECONDS));
-        final Date expiresAt = new Date(expiresDateTime.getLong(ChronoField.INSTANT_SECONDS));
+        final Date issuedAt = Date.from(issuedDateTime.toInstant());
+        final Date expiresAt = Date.from(expiresDateTime.toInstant());
 
         return JWT.create().withIssuer(TOKEN_ISSUER) //
-                .withKeyId(UUID.randomUUID().toString())
-                .withAudience(userUuid) //
-                .withIssuedAt(issuedAt).withExpiresAt(expiresAt).sign(algorithm);
+                .withKeyId(keyRing.getActiveKeyId())
+                .withJWTId(sessionUuid)
+                .withAudience(TOKEN_AUDIENCE) //
+                .withSubject(userUuid)
+                .withClaim(USER_ID_CLAIM, userId)
+                .withClaim(ROLE_CLAIM, role)
+                .withIssuedAt(issuedAt).withExpiresAt(expiresAt).sign(keyRing.getActiveAlgorithm());
+    }
+
+    /**
+     * Reads the issue time of a token without verifying it.
+     *
+     * @param token - access token sent by the client
+     * @return - issue time in epoch millis, or -1 if the token is not a JWT with an issue time
+     */
+    public long getIssuedAtMillis(final String token) {
+        try {
+            final Date issuedAt = JWT.decode(token).getIssuedAt();
+            return issuedAt == null ? -1 : issuedAt.getTime();
+        } catch (JWTVerificationException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Checks signature, issuer, audience and expiry of the token in memory.
+     *
+     * @param token - access token sent by the client
+     * @return - the decoded token, or null if the token is not a JWT signed with a key on the ring or fails verification
+     */
+    public DecodedJWT verifyToken(final String token) {
+        try {
+            final DecodedJWT decoded = JWT.decode(token);
+            if (keyRing.getAlgorithm(decoded.getKeyId()) == null) {
+                return null;
+            }
+            return JWT.require(keyRing.getAlgorithm(decoded.getKeyId()))
+                    .withIssuer(TOKEN_ISSUER)
+                    .withAudience(TOKEN_AUDIENCE)
+                    .build()
+                    .verify(token);
+        } catch (JWTVerificationException e) {
+            return null;
+        }
     }
 
 }
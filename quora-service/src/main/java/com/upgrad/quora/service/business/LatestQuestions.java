@@ -0,0 +1,214 @@
+package com.upgrad.quora.service.business;
+
+import com.upgrad.quora.service.common.TransactionCallbacks;
+import com.upgrad.quora.service.dao.QuestionDao;
+import com.upgrad.quora.service.entity.QuestionEntity;
+import com.upgrad.quora.service.model.QuestionSnapshot;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Predicate;
+
+/**
+ * Lock-free ring buffer of the most recently created questions, which serves /question/latest without a database
+ * query. It is filled at startup with one query over the QUESTION (date DESC, id DESC) index, and follows the
+ * creates, edits and deletes once they commit, those of the other nodes arrive through the InvalidationBus.
+ *
+ * Every slot holds the sequence number of its question, so a reader skips a slot which a writer has overwritten
+ * while it was reading. Edits and deletes swap the slot of the question with compare-and-set, deleted questions
+ * leave an empty slot until it is overwritten, so the feed may hold fewer questions than the capacity.
+ * A reload fills a new buffer and swaps it in, readers keep using the current one meanwhile.
+ */
+@Component
+public class LatestQuestions {
+
+    @Value("${quora.question.latest.capacity:100}")
+    private int capacity;
+
+    @Autowired private QuestionDao questionDao;
+
+    @Autowired private MeterRegistry meterRegistry;
+
+    private volatile Ring ring;
+
+    @PostConstruct
+    public void load() {
+        Gauge.builder("quora.question.latest.size", this, LatestQuestions::size).register(meterRegistry);
+        reload();
+    }
+
+    /**
+     * Refills the buffer from the database, after events of the other nodes may have been missed.
+     */
+    public void reload() {
+        final Ring loaded = new Ring(capacity);
+        final List<QuestionSnapshot> latest = questionDao.getLatestQuestions(capacity);
+        for (int i = latest.size() - 1; i >= 0; i--) {
+            loaded.append(latest.get(i));
+        }
+        ring = loaded;
+    }
+
+    /**
+     * Adds the created question at the head once the surrounding transaction commits.
+     *
+     * @param questionEntity : Persisted question.
+     */
+    public void questionCreated(final QuestionEntity questionEntity) {
+        final QuestionSnapshot question = snapshot(questionEntity);
+        TransactionCallbacks.afterCommit(() -> ring.append(question));
+    }
+
+    /**
+     * Replaces the edited question, if it is among the latest, once the surrounding transaction commits.
+     *
+     * @param question : Question with its new content.
+     */
+    public void questionEdited(final QuestionSnapshot question) {
+        TransactionCallbacks.afterCommit(() -> replace(question));
+    }
+
+    /**
+     * Drops the question once the surrounding transaction commits.
+     *
+     * @param questionId : Id of the deleted question.
+     */
+    public void questionDeleted(final int questionId) {
+        TransactionCallbacks.afterCommit(() -> remove(question -> question.getId() == questionId));
+    }
+
+    /**
+     * Drops the questions of the user, which go with the ON DELETE CASCADE, once the surrounding transaction commits.
+     *
+     * @param userId : Id of the deleted user.
+     */
+    public void userDeleted(final int userId) {
+        TransactionCallbacks.afterCommit(() -> remove(question -> question.getUserId() == userId));
+    }
+
+    /**
+     * Applies a question created or edited on another node, read back from the database. Questions not in the
+     * buffer are added only if they are not older than every question in it, so that edits of old questions
+     * stay out.
+     *
+     * @param uuid : Uuid of the question.
+     */
+    public void reloadQuestion(final String uuid) {
+        final QuestionSnapshot question = questionDao.getQuestionSnapshotByUuid(uuid);
+        if (question == null || replace(question)) {
+            return;
+        }
+        final List<QuestionSnapshot> latest = latest(capacity);
+        if (latest.size() < capacity
+                || !question.getDate().isBefore(latest.get(latest.size() - 1).getDate())) {
+            ring.append(question);
+        }
+    }
+
+    /**
+     * @param limit : Maximum number of questions to return.
+     * @return the latest questions, newest first.
+     */
+    public List<QuestionSnapshot> latest(final int limit) {
+        final Ring current = ring;
+        final List<QuestionSnapshot> questions = new ArrayList<>(Math.min(limit, capacity));
+        final long end = current.head.get();
+        for (long sequence = end - 1; sequence >= Math.max(0, end - capacity) && questions.size() < limit; sequence--) {
+            final Slot slot = current.slots.get(current.index(sequence));
+            // A writer has not filled the slot yet, or has already reused it for a newer question.
+            if (slot != null && slot.sequence == sequence && slot.question != null) {
+                questions.add(slot.question);
+            }
+        }
+        return questions;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int size() {
+        return latest(capacity).size();
+    }
+
+    /**
+     * @return true if the question was found in the buffer.
+     */
+    private boolean replace(final QuestionSnapshot question) {
+        return swap(current -> current.getId().equals(question.getId()), question);
+    }
+
+    private void remove(final Predicate<QuestionSnapshot> matches) {
+        swap(matches, null);
+    }
+
+    /**
+     * Swaps the question of every live slot matching the predicate, retrying a slot whose content changed meanwhile.
+     */
+    private boolean swap(final Predicate<QuestionSnapshot> matches, final QuestionSnapshot replacement) {
+        final AtomicReferenceArray<Slot> slots = ring.slots;
+        boolean found = false;
+        for (int i = 0; i < slots.length(); i++) {
+            Slot slot = slots.get(i);
+            while (slot != null && slot.question != null && matches.test(slot.question)) {
+                if (slots.compareAndSet(i, slot, new Slot(slot.sequence, replacement))) {
+                    found = true;
+                    break;
+                }
+                slot = slots.get(i);
+            }
+        }
+        return found;
+    }
+
+    private static QuestionSnapshot snapshot(final QuestionEntity questionEntity) {
+        return new QuestionSnapshot(questionEntity.getId(), questionEntity.getUuid(), questionEntity.getContent(),
+                questionEntity.getDate(), questionEntity.getUserEntity().getId());
+    }
+
+    private static final class Ring {
+
+        private final AtomicReferenceArray<Slot> slots;
+
+        /**
+         * Sequence number of the next question, the slot of a sequence number is the number modulo the capacity.
+         */
+        private final AtomicLong head = new AtomicLong();
+
+        private Ring(final int capacity) {
+            slots = new AtomicReferenceArray<>(capacity);
+        }
+
+        private void append(final QuestionSnapshot question) {
+            final long sequence = head.getAndIncrement();
+            slots.set(index(sequence), new Slot(sequence, question));
+        }
+
+        private int index(final long sequence) {
+            return (int) (sequence % slots.length());
+        }
+    }
+
+    private static final class Slot {
+
+        private final long sequence;
+
+        /**
+         * Null once the question is deleted.
+         */
+        private final QuestionSnapshot question;
+
+        private Slot(final long sequence, final QuestionSnapshot question) {
+            this.sequence = sequence;
+            this.question = question;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.upgrad.quora.service.business;
+
+import com.upgrad.quora.service.common.TransactionCallbacks;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Version counters of the question listing and of the answer listing of every question, which give the weak
+ * ETags of /question/all and /answer/all/{questionId}. A poller sending the ETag back in If-None-Match gets a 304
+ * without a query as long as nothing it lists has changed.
+ *
+ * The answer listings are versioned in a fixed number of stripes keyed by the question uuid, so the memory stays
+ * bounded; a change to one question only costs a full response to the pollers of the questions sharing its stripe.
+ * Counters are bumped once the change commits, and the ETag is taken before the rows are read, so a response can
+ * carry an older tag than its rows but never a newer one. Changes made on the other nodes arrive through the
+ * InvalidationBus. The counters live in memory, so every ETag carries the epoch of this node and a tag issued by
+ * another node or before a restart never matches.
+ */
+@Component
+public class ListingVersions {
+
+    private static final int ANSWER_LISTING_STRIPES = 4096;
+
+    @Autowired private MeterRegistry meterRegistry;
+
+    private final String epoch = Long.toHexString(UUID.randomUUID().getMostSignificantBits() >>> 16);
+
+    private final AtomicLong questions = new AtomicLong();
+
+    private final AtomicLongArray answers = new AtomicLongArray(ANSWER_LISTING_STRIPES);
+
+    /**
+     * Bumped by changes that may touch any answer listing, such as user deletions.
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    private Counter questionsNotModified;
+
+    private Counter answersNotModified;
+
+    @PostConstruct
+    public void registerMetrics() {
+        questionsNotModified = Counter.builder("quora.listing.not-modified").tag("listing", "questions")
+                .register(meterRegistry);
+        answersNotModified = Counter.builder("quora.listing.not-modified").tag("listing", "answers")
+                .register(meterRegistry);
+    }
+
+    /**
+     * A question was created, edited or deleted: the question listing and the answer listing of the question,
+     * which shows the question content, change once the surrounding transaction commits.
+     *
+     * @param questionUuid : Uuid of the question.
+     */
+    public void questionChanged(final String questionUuid) {
+        TransactionCallbacks.afterCommit(() -> {
+            questions.incrementAndGet();
+            answers.incrementAndGet(stripe(questionUuid));
+        });
+    }
+
+    /**
+     * New questions were created, the question listing changes once the surrounding transaction commits.
+     */
+    public void questionsCreated() {
+        TransactionCallbacks.afterCommit(questions::incrementAndGet);
+    }
+
+    /**
+     * An answer of the question was created, edited or deleted, its answer listing changes once the surrounding
+     * transaction commits.
+     *
+     * @param questionUuid : Uuid of the answered question.
+     */
+    public void answersChanged(final String questionUuid) {
+        TransactionCallbacks.afterCommit(() -> answers.incrementAndGet(stripe(questionUuid)));
+    }
+
+    /**
+     * Answer counts were written to QUESTION, the question listing, which shows them, changes once the surrounding
+     * transaction commits.
+     */
+    public void answerCountsChanged() {
+        TransactionCallbacks.afterCommit(questions::incrementAndGet);
+    }
+
+    /**
+     * Every listing changes once the surrounding transaction commits, for changes which cannot be narrowed down.
+     */
+    public void allChanged() {
+        TransactionCallbacks.afterCommit(() -> {
+            questions.incrementAndGet();
+            generation.incrementAndGet();
+        });
+    }
+
+    /**
+     * @return weak ETag of the question listing.
+     */
+    public String questionsTag() {
+        return "W/\"" + epoch + "-" + generation.get() + "-" + questions.get() + "\"";
+    }
+
+    /**
+     * @param questionUuid : Uuid of the question whose answers are listed.
+     * @return weak ETag of the answer listing of the question.
+     */
+    public String answersTag(final String questionUuid) {
+        return "W/\"" + epoch + "-" + generation.get() + "-" + answers.get(stripe(questionUuid)) + "\"";
+    }
+
+    /**
+     * @param ifNoneMatch : If-None-Match request header, may be null.
+     * @param questionsTag : Current tag of the question listing.
+     * @return true if the client already holds the current question listing.
+     */
+    public boolean questionsNotModified(final String ifNoneMatch, final String questionsTag) {
+        return notModified(ifNoneMatch, questionsTag, questionsNotModified);
+    }
+
+    /**
+     * @param ifNoneMatch : If-None-Match request header, may be null.
+     * @param answersTag : Current tag of the answer listing.
+     * @return true if the client already holds the current answer listing.
+     */
+    public boolean answersNotModified(final String ifNoneMatch, final String answersTag) {
+        return notModified(ifNoneMatch, answersTag, answersNotModified);
+    }
+
+    /**
+     * Weak comparison of RFC 7232: the W/ prefixes are ignored, any of the listed tags or * matches.
+     */
+    private static boolean notModified(final String ifNoneMatch, final String tag, final Counter counter) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        final String opaqueTag = opaque(tag);
+        for (String candidate : ifNoneMatch.split(",")) {
+            final String trimmed = candidate.trim();
+            if (trimmed.equals("*") || opaque(trimmed).equals(opaqueTag)) {
+                counter.increment();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String opaque(final String tag) {
+        return tag.startsWith("W/") ? tag.substring(2) : tag;
+    }
+
+    private static int stripe(final String questionUuid) {
+        return (questionUuid.hashCode() & 0x7fffffff) % ANSWER_LISTING_STRIPES;
+    }
+}
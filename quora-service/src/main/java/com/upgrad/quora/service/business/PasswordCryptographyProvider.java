@@ -16,11 +16,22 @@ import org.springframework.stereotype.Component;
 @Component
 public class PasswordCryptographyProvider {
 
-    private static String SECRET_KEY_ALGORITHM = "PBKDF2WithHmacSHA512";
+    private static final String SECRET_KEY_ALGORITHM = "PBKDF2WithHmacSHA512";
     private static int HASHING_ITERATIONS = 1000;
     private static int HASHING_KEY_LENGTH = 64;
     private final static char[] hexArray = "0123456789ABCDEF".toCharArray();
 
+    /**
+     * SecretKeyFactory lookups go through the provider registry, so each thread keeps its own instance.
+     */
+    private static final ThreadLocal<SecretKeyFactory> SECRET_KEY_FACTORY = ThreadLocal.withInitial(() -> {
+        try {
+            return SecretKeyFactory.getInstance(SECRET_KEY_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    });
+
     /**
      * This method generates Salt and hashed Password
      *
@@ -66,17 +77,23 @@ public class PasswordCryptographyProvider {
      */
     private static byte[] hashPassword(final char[] password, final byte[] salt) {
         try {
-            SecretKeyFactory skf = SecretKeyFactory.getInstance(SECRET_KEY_ALGORITHM);
+            SecretKeyFactory skf = SECRET_KEY_FACTORY.get();
             PBEKeySpec spec = new PBEKeySpec(password, salt, HASHING_ITERATIONS, HASHING_KEY_LENGTH);
             SecretKey key = skf.generateSecret(spec);
             byte[] res = key.getEncoded();
             return res;
-        } catch (NoSuchAlgorithmException | InvalidKeySpecException e) {
+        } catch (InvalidKeySpecException e) {
             throw new RuntimeException(e);
         }
     }
 
-    private static String bytesToHex(byte[] bytes) {
+    /**
+     * This method encodes bytes as upper case hex, the format hashed passwords are stored in.
+     *
+     * @param bytes byte array.
+     * @return hex string, two characters per byte.
+     */
+    public static String bytesToHex(byte[] bytes) {
         char[] hexChars = new char[bytes.length * 2];
         for (int j = 0; j < bytes.length; j++) {
             int v = bytes[j] & 0xFF;
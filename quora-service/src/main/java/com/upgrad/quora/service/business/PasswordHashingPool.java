@@ -0,0 +1,117 @@
+package com.upgrad.quora.service.business;
+
+import com.upgrad.quora.service.exception.ServiceBusyException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Dedicated, size-limited executor for the CPU bound PBKDF2 work of signin and signup, so that login storms
+ * cannot take every request thread. When the queue is full the request is rejected right away.
+ */
+@Component
+public class PasswordHashingPool {
+
+    @Value("${quora.auth.hashing.pool-size:4}")
+    private int poolSize;
+
+    @Value("${quora.auth.hashing.queue-capacity:64}")
+    private int queueCapacity;
+
+    @Value("${quora.auth.hashing.timeout-millis:5000}")
+    private long timeoutMillis;
+
+    @Autowired private MeterRegistry meterRegistry;
+
+    private ThreadPoolExecutor executor;
+
+    private Timer hashLatency;
+
+    private Timer queueWait;
+
+    private Counter rejections;
+
+    @PostConstruct
+    public void start() {
+        final AtomicInteger threadCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "password-hashing-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+
+        hashLatency = Timer.builder("quora.auth.hashing.latency").register(meterRegistry);
+        queueWait = Timer.builder("quora.auth.hashing.queue-wait").register(meterRegistry);
+        rejections = Counter.builder("quora.auth.hashing.rejected").register(meterRegistry);
+        Gauge.builder("quora.auth.hashing.queue-depth", executor, e -> e.getQueue().size()).register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Runs the hashing task on the pool and waits for its result.
+     *
+     * @param task : password hashing to run.
+     * @return result of the task.
+     * @throws ServiceBusyException : If the queue is full or the result does not arrive in time.
+     */
+    public <T> T execute(final Callable<T> task) throws ServiceBusyException {
+        final long submittedAt = System.nanoTime();
+        final Future<T> future;
+        try {
+            future = executor.submit(() -> {
+                final long startedAt = System.nanoTime();
+                queueWait.record(startedAt - submittedAt, TimeUnit.NANOSECONDS);
+                try {
+                    return task.call();
+                } finally {
+                    hashLatency.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejections.increment();
+            throw busy();
+        }
+
+        try {
+            return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            rejections.increment();
+            throw busy();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw busy();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    private static ServiceBusyException busy() {
+        return new ServiceBusyException("GEN-002", "Server is busy, please try again shortly");
+    }
+}
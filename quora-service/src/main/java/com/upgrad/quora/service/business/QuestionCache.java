@@ -0,0 +1,158 @@
+package com.upgrad.quora.service.business;
+
+import com.upgrad.quora.service.common.TransactionCallbacks;
+import com.upgrad.quora.service.model.QuestionSnapshot;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Bounded read-through cache of question snapshots by uuid, sitting in front of the QUESTION table for the
+ * existence checks of answer creation and answer listing. Entries are dropped when the question is edited or
+ * deleted, when its owner is deleted, and on the other nodes through the InvalidationBus.
+ *
+ * Like the AccessTokenCache, every invalidation moves the cache to a new generation and a lookup drops what it
+ * cached if the generation moved while it read the database, so a row read before an edit or deletion committed
+ * cannot stay cached after their eviction.
+ */
+@Component
+public class QuestionCache {
+
+    @Value("${quora.question-cache.max-entries:10000}")
+    private int maxEntries;
+
+    @Autowired private MeterRegistry meterRegistry;
+
+    private final Map<String, QuestionSnapshot> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Moved by every invalidation, before it removes anything.
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    @PostConstruct
+    public void registerMetrics() {
+        FunctionCounter.builder("quora.question-cache.hits", hits, LongAdder::sum).register(meterRegistry);
+        FunctionCounter.builder("quora.question-cache.misses", misses, LongAdder::sum).register(meterRegistry);
+        FunctionCounter.builder("quora.question-cache.evictions", evictions, LongAdder::sum).register(meterRegistry);
+        Gauge.builder("quora.question-cache.size", entries, Map::size).register(meterRegistry);
+        Gauge.builder("quora.question-cache.hit-ratio", this, QuestionCache::hitRatio).register(meterRegistry);
+    }
+
+    /**
+     * Returns the question with the uuid, loading it through the loader on a miss.
+     *
+     * @param uuid : Uuid of the question.
+     * @param loader : Database lookup used on a cache miss, returns null for unknown questions.
+     * @return QuestionSnapshot or null if the question does not exist.
+     */
+    public QuestionSnapshot getOrLoad(final String uuid, final Function<String, QuestionSnapshot> loader) {
+        QuestionSnapshot snapshot = entries.get(uuid);
+        if (snapshot != null) {
+            hits.increment();
+            return snapshot;
+        }
+        misses.increment();
+        final long loadedGeneration = generation.get();
+        snapshot = loader.apply(uuid);
+        if (snapshot != null) {
+            if (entries.size() >= maxEntries) {
+                purge();
+            }
+            entries.put(uuid, snapshot);
+            // Checked after the put, so an invalidation either sees the entry or is seen here.
+            if (generation.get() != loadedGeneration && entries.remove(uuid, snapshot)) {
+                evictions.increment();
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Drops the question right away and once more after the surrounding transaction commits, when the change
+     * becomes visible to the lookups; a lookup which read the row before then does not keep it.
+     *
+     * @param uuid : Uuid of the edited or deleted question.
+     */
+    public void invalidate(final String uuid) {
+        evict(uuid);
+        TransactionCallbacks.afterCommit(() -> evict(uuid));
+    }
+
+    /**
+     * Drops every cached question of the user, once more after the surrounding transaction commits.
+     *
+     * @param userId : Id of the deleted user.
+     */
+    public void invalidateUser(final Integer userId) {
+        evictUser(userId);
+        TransactionCallbacks.afterCommit(() -> evictUser(userId));
+    }
+
+    /**
+     * Drops every entry.
+     */
+    public void clear() {
+        generation.incrementAndGet();
+        evictions.add(entries.size());
+        entries.clear();
+    }
+
+    public double hitRatio() {
+        final long hitCount = hits.sum();
+        final long lookups = hitCount + misses.sum();
+        return lookups == 0 ? 0 : (double) hitCount / lookups;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private void evict(final String uuid) {
+        generation.incrementAndGet();
+        if (entries.remove(uuid) != null) {
+            evictions.increment();
+        }
+    }
+
+    private void evictUser(final Integer userId) {
+        generation.incrementAndGet();
+        entries.values().removeIf(snapshot -> {
+            boolean matches = userId.equals(snapshot.getUserId());
+            if (matches) {
+                evictions.increment();
+            }
+            return matches;
+        });
+    }
+
+    /**
+     * Removes an arbitrary tenth of the cache.
+     */
+    private void purge() {
+        int excess = entries.size() - maxEntries + Math.max(1, maxEntries / 10);
+        Iterator<String> iterator = entries.keySet().iterator();
+        while (excess-- > 0 && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+            evictions.increment();
+        }
+    }
+}
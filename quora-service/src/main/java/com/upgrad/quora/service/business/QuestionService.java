@@ -1,128 +1,390 @@
 package com.upgrad.quora.service.business;
 
+import com.upgrad.quora.service.common.KeysetPageToken;
+import com.upgrad.quora.service.common.Page;
+import com.upgrad.quora.service.common.RankPageToken;
+import com.upgrad.quora.service.common.VersionTag;
 import com.upgrad.quora.service.dao.QuestionDao;
 import com.upgrad.quora.service.entity.QuestionEntity;
 import com.upgrad.quora.service.entity.UserAuthEntity;
 import com.upgrad.quora.service.entity.UserEntity;
 import com.upgrad.quora.service.exception.AuthorizationFailedException;
+import com.upgrad.quora.service.exception.DuplicateQuestionException;
+import com.upgrad.quora.service.exception.InvalidBatchException;
+import com.upgrad.quora.service.exception.InvalidPaginationException;
 import com.upgrad.quora.service.exception.InvalidQuestionException;
+import com.upgrad.quora.service.exception.PreconditionFailedException;
+import com.upgrad.quora.service.exception.ServiceBusyException;
 import com.upgrad.quora.service.exception.UserNotFoundException;
+import com.upgrad.quora.service.model.DuplicateQuestion;
+import com.upgrad.quora.service.model.QuestionBatchResult;
+import com.upgrad.quora.service.model.QuestionSearchHit;
+import com.upgrad.quora.service.model.QuestionSnapshot;
+import com.upgrad.quora.service.model.QuestionSummary;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
 
 @Service
 public class QuestionService {
     @Autowired
     private QuestionDao questionDao;
     @Autowired
-    private CommonService commonService;
+    private QuestionCache questionCache;
+    @Autowired
+    private ContentSearchIndex contentSearchIndex;
+    @Autowired
+    private InvalidationBus invalidationBus;
+    @Autowired
+    private ListingVersions listingVersions;
+    @Autowired
+    private LatestQuestions latestQuestions;
+
+    /**
+     * Length of the QUESTION content column.
+     */
+    private static final int MAX_CONTENT_LENGTH = 500;
+
+    @Value("${quora.question.batch.max-size:500}")
+    private int maxBatchSize;
+
+    @Value("${quora.question.duplicates.max-results:5}")
+    private int maxDuplicates;
+
+    @Value("${quora.question.duplicates.reject:false}")
+    private boolean rejectDuplicates;
+
+    @Value("${quora.question.duplicates.reject-max-distance:1}")
+    private int rejectMaxDistance;
+
+    @Value("${quora.pagination.default-page-size:50}")
+    private int defaultPageSize;
+
+    @Value("${quora.pagination.max-page-size:100}")
+    private int maxPageSize;
+
+    @Value("${quora.streaming.page-size:500}")
+    private int streamingPageSize;
 
     /**
      * This method takes the question content and creates an answer.
      *
      * @param questionEntity - the questionEntity to be persisted in db
      * @return - persisted question
+     * @throws DuplicateQuestionException - thrown if rejecting duplicates is enabled and a question with nearly
+     * the same content exists
      */
     @Transactional(propagation = Propagation.REQUIRED)
-    public QuestionEntity createQuestion(QuestionEntity questionEntity){
+    public QuestionEntity createQuestion(QuestionEntity questionEntity) throws DuplicateQuestionException {
+        if (isRejectedDuplicate(questionEntity.getContent())) {
+            throw new DuplicateQuestionException("QUES-004", "A question with the same content already exists");
+        }
         // call createQuestion of the questionDao
         QuestionEntity persistedQuestion = questionDao.createQuestion(questionEntity);
+        contentSearchIndex.questionSaved(persistedQuestion);
+        listingVersions.questionsCreated();
+        latestQuestions.questionCreated(persistedQuestion);
+        invalidationBus.questionSaved(persistedQuestion.getUuid());
         return persistedQuestion;
     }
 
     /**
-     * This methods returns a list of all questions in the DB.
+     * This method creates the questions of a batch in one transaction, the inserts go out in JDBC batches.
+     * Questions with empty or too long content, or duplicates when they are rejected, are rejected one by one,
+     * the others are still created.
      *
-     * @return - list of all questionEntities
+     * @param userEntity - owner of the questions
+     * @param contents - contents of the questions, in request order
+     * @return - one result per content, in request order
+     * @throws InvalidBatchException - thrown if the batch is empty or larger than the maximum batch size
      */
-    public List<QuestionEntity> getAllQuestions(){
-        // call getAllQuestions of questionDao
-        List<QuestionEntity>questionEntities = questionDao.getAllQuestions();
-        return questionEntities;
+    @Transactional(propagation = Propagation.REQUIRED)
+    public List<QuestionBatchResult> createQuestions(final UserEntity userEntity, final List<String> contents)
+            throws InvalidBatchException {
+        if (contents == null || contents.isEmpty() || contents.size() > maxBatchSize) {
+            throw new InvalidBatchException("BAT-001", "A batch must hold between 1 and " + maxBatchSize + " questions");
+        }
+        final ZonedDateTime now = ZonedDateTime.now();
+        final List<QuestionBatchResult> results = new ArrayList<>(contents.size());
+        final List<QuestionEntity> questionEntities = new ArrayList<>(contents.size());
+        for (String content : contents) {
+            if (content == null || content.trim().isEmpty()) {
+                results.add(QuestionBatchResult.rejected("QUES-002", "Question content is empty"));
+            } else if (content.length() > MAX_CONTENT_LENGTH) {
+                results.add(QuestionBatchResult.rejected("QUES-003",
+                        "Question content is longer than " + MAX_CONTENT_LENGTH + " characters"));
+            } else if (isRejectedDuplicate(content)) {
+                results.add(QuestionBatchResult.rejected("QUES-004", "A question with the same content already exists"));
+            } else {
+                QuestionEntity questionEntity = new QuestionEntity();
+                questionEntity.setUuid(UUID.randomUUID().toString());
+                questionEntity.setContent(content);
+                questionEntity.setDate(now);
+                questionEntity.setUserEntity(userEntity);
+                questionEntities.add(questionEntity);
+                results.add(QuestionBatchResult.created(questionEntity.getUuid()));
+            }
+        }
+        if (!questionEntities.isEmpty()) {
+            questionDao.createQuestions(questionEntities);
+            questionEntities.forEach(contentSearchIndex::questionSaved);
+            listingVersions.questionsCreated();
+            questionEntities.forEach(latestQuestions::questionCreated);
+            invalidationBus.questionsSaved(questionEntities);
+        }
+        return results;
     }
 
+    /**
+     * This method returns the existing questions whose content is nearly the same as the given content, from the
+     * in-memory SimHash index without a database query.
+     *
+     * @param content - content of a new question
+     * @return - likely duplicates, closest first
+     */
+    public List<DuplicateQuestion> findDuplicateQuestions(final String content) {
+        return contentSearchIndex.findDuplicateQuestions(content, SimHashIndex.MAX_DISTANCE, maxDuplicates);
+    }
+
+    private boolean isRejectedDuplicate(final String content) {
+        return rejectDuplicates && !contentSearchIndex.findDuplicateQuestions(content, rejectMaxDistance, 1).isEmpty();
+    }
 
     /**
-     * This method takes a questionId as argument and returns the corresponding question.
+     * This method returns one page of questions, newest first.
      *
-     * @param uuid- uuid of the question to be fetched from the database
-     * @return - questionEntity with the corresponding uuid
-     * @throws InvalidQuestionException - thrown if the question with the provided uuid not present
+     * @param pageToken - token returned with the previous page, null for the first page
+     * @param limit - requested page size, null for the default, capped at the maximum page size
+     * @return - page of question summaries with the token of the next page
+     * @throws InvalidPaginationException - thrown if the page token or the page size is invalid
      */
-    public QuestionEntity getQuestionByUuid(String uuid) throws InvalidQuestionException {
-        QuestionEntity questionEntity = questionDao.getQuestionByUuid(uuid);
+    public Page<QuestionSummary> getQuestionsPage(final String pageToken, final Integer limit)
+            throws InvalidPaginationException {
+        final int pageSize = pageSize(limit);
+        final KeysetPageToken after = pageToken == null || pageToken.isEmpty() ? null : KeysetPageToken.decode(pageToken);
 
-        if(questionEntity == null){
-            throw new InvalidQuestionException("QUES-001","Entered question uuid does not exist");
+        // One row more than the page tells whether there is a next page.
+        List<QuestionSummary> questions = after == null
+                ? questionDao.getQuestionsPage(null, null, pageSize + 1)
+                : questionDao.getQuestionsPage(after.getDate(), after.getIntId(), pageSize + 1);
+        if (questions.size() <= pageSize) {
+            return new Page<>(questions, null);
         }
-        return questionEntity;
+        questions = questions.subList(0, pageSize);
+        QuestionSummary last = questions.get(pageSize - 1);
+        return new Page<>(questions, new KeysetPageToken(last.getDate(), last.getId()).encode());
     }
 
     /**
-     * Method to update the content of a question.
+     * This method returns one page of the questions matching a full-text search, most relevant first.
      *
-     * @param questionEntity - questionEntity to be updated
-     * @return updated questionEntity
+     * @param query - search text, words, "quoted phrases", or and -excluded words are understood
+     * @param pageToken - token returned with the previous page, null for the first page
+     * @param limit - requested page size, null for the default, capped at the maximum page size
+     * @return - page of search hits with the token of the next page
+     * @throws InvalidPaginationException - thrown if the page token or the page size is invalid
      */
-    @Transactional(propagation = Propagation.REQUIRED)
-    public QuestionEntity updateQuestion(QuestionEntity questionEntity){
-        QuestionEntity updatedQuestion = questionDao.updateQuestion(questionEntity);
-        return updatedQuestion;
+    public Page<QuestionSearchHit> searchQuestions(final String query, final String pageToken, final Integer limit)
+            throws InvalidPaginationException {
+        final int pageSize = pageSize(limit);
+        if (query == null || query.trim().isEmpty()) {
+            return new Page<>(Collections.emptyList(), null);
+        }
+        final RankPageToken after = pageToken == null || pageToken.isEmpty() ? null : RankPageToken.decode(pageToken);
+
+        // One row more than the page tells whether there is a next page.
+        List<QuestionSearchHit> hits = after == null
+                ? questionDao.searchQuestions(query, null, null, pageSize + 1)
+                : questionDao.searchQuestions(query, after.getRank(), after.getId(), pageSize + 1);
+        if (hits.size() <= pageSize) {
+            return new Page<>(hits, null);
+        }
+        hits = hits.subList(0, pageSize);
+        QuestionSearchHit last = hits.get(pageSize - 1);
+        return new Page<>(hits, new RankPageToken(last.getRank(), last.getId()).encode());
     }
 
     /**
-     * Validate whether is user is authorized to edit the question.
+     * This method returns one page of the questions matching a search in the in-memory index of this node,
+     * most relevant first, without querying the database.
      *
-     * @param userToEdit user requesting edit
-     * @param questionOwner owner of the question
-     * @throws AuthorizationFailedException
+     * @param query - search text, the words are matched independently of each other
+     * @param pageToken - token returned with the previous page, null for the first page
+     * @param limit - requested page size, null for the default, capped at the maximum page size
+     * @return - page of search hits with the token of the next page
+     * @throws InvalidPaginationException - thrown if the page token or the page size is invalid
+     * @throws ServiceBusyException - thrown if the index is disabled on this node
      */
-    public void authorizeEdit(UserEntity userToEdit,UserEntity questionOwner) throws AuthorizationFailedException {
-        if(userToEdit.getId() != questionOwner.getId()){
+    public Page<QuestionSearchHit> searchQuestionsInIndex(final String query, final String pageToken, final Integer limit)
+            throws InvalidPaginationException, ServiceBusyException {
+        final int pageSize = pageSize(limit);
+        if (query == null || query.trim().isEmpty()) {
+            return new Page<>(Collections.emptyList(), null);
+        }
+        final RankPageToken after = pageToken == null || pageToken.isEmpty() ? null : RankPageToken.decode(pageToken);
+
+        // One hit more than the page tells whether there is a next page.
+        List<QuestionSearchHit> hits = after == null
+                ? contentSearchIndex.searchQuestions(query, null, null, pageSize + 1)
+                : contentSearchIndex.searchQuestions(query, after.getRank(), after.getId(), pageSize + 1);
+        if (hits.size() <= pageSize) {
+            return new Page<>(hits, null);
+        }
+        hits = hits.subList(0, pageSize);
+        QuestionSearchHit last = hits.get(pageSize - 1);
+        return new Page<>(hits, new RankPageToken(last.getRank(), last.getId()).encode());
+    }
+
+    /**
+     * This method returns the newest questions from memory, without a database query.
+     *
+     * @param limit - requested number of questions, null for the default page size, capped at the feed capacity
+     * @return - the newest questions, newest first
+     * @throws InvalidPaginationException - thrown if the limit is below 1
+     */
+    public List<QuestionSnapshot> getLatestQuestions(final Integer limit) throws InvalidPaginationException {
+        return latestQuestions.latest(Math.min(pageSize(limit), latestQuestions.getCapacity()));
+    }
+
+    private int pageSize(final Integer limit) throws InvalidPaginationException {
+        if (limit != null && limit < 1) {
+            throw new InvalidPaginationException("PAG-002", "Page size must be at least 1");
+        }
+        return limit == null ? defaultPageSize : Math.min(limit, maxPageSize);
+    }
+
+    /**
+     * This method hands every question, newest first, to the consumer without holding them all in memory.
+     * The questions are read in keyset pages, each by its own query, so no connection is held while the
+     * consumer runs.
+     *
+     * @param consumer - called once per question
+     */
+    public void forEachQuestion(final Consumer<QuestionSummary> consumer){
+        List<QuestionSummary> questions = questionDao.getQuestionsPage(null, null, streamingPageSize);
+        while (!questions.isEmpty()) {
+            questions.forEach(consumer);
+            if (questions.size() < streamingPageSize) {
+                return;
+            }
+            QuestionSummary last = questions.get(questions.size() - 1);
+            questions = questionDao.getQuestionsPage(last.getDate(), last.getId(), streamingPageSize);
+        }
+    }
+
+    /**
+     * Edits the content of a question with one conditional UPDATE, checked against the versions of If-Match.
+     * The question is looked up in the question cache, the edited row is not loaded.
+     *
+     * @param user - user requesting the edit
+     * @param questionUuid - uuid of the question to be edited
+     * @param content - new content of the question
+     * @param ifMatch - If-Match request header, null to edit whatever the current version is
+     * @return new version of the question, for its ETag
+     * @throws AuthorizationFailedException - thrown if the user is not the owner of the question
+     * @throws InvalidQuestionException - thrown if the question with the provided uuid not present
+     * @throws PreconditionFailedException - thrown if the question is not at a version of If-Match
+     */
+    @Transactional(propagation = Propagation.REQUIRED)
+    public int editQuestion(final UserEntity user, final String questionUuid, final String content, final String ifMatch)
+            throws AuthorizationFailedException, InvalidQuestionException, PreconditionFailedException {
+        QuestionSnapshot question = questionCache.getOrLoad(questionUuid, questionDao::getQuestionSnapshotByUuid);
+        if(question == null){
+            throw new InvalidQuestionException("QUES-001","Entered question uuid does not exist");
+        }
+        if(!user.getId().equals(question.getUserId())){
             throw new AuthorizationFailedException("ATHR-003","Only the question owner can edit the question");
         }
+
+        final List<Integer> versions = VersionTag.parseIfMatch(ifMatch);
+        final Integer version = versions != null && versions.isEmpty()
+                ? null : questionDao.editQuestion(question.getId(), content, versions);
+        if(version == null){
+            // Deleted meanwhile, or at another version than the client read.
+            if(questionDao.getQuestionVersion(question.getId()) == null){
+                throw new InvalidQuestionException("QUES-001","Entered question uuid does not exist");
+            }
+            throw new PreconditionFailedException("QUES-005","The question was changed since the version in If-Match");
+        }
+
+        final QuestionSnapshot edited = new QuestionSnapshot(question.getId(), question.getUuid(), content,
+                question.getDate(), question.getUserId());
+        questionCache.invalidate(questionUuid);
+        contentSearchIndex.questionEdited(edited);
+        listingVersions.questionChanged(questionUuid);
+        latestQuestions.questionEdited(edited);
+        invalidationBus.questionSaved(questionUuid);
+        return version;
     }
 
 
     /**
-     * Returns all the questions corresponding to a user.
+     * Returns one page of the questions of a user, newest first.
+     * The user is looked up by the same query as the questions.
      *
      * @param userUuid- uuid of user for which all question need to fetch
-     * @return list of question for user
+     * @param pageToken - token returned with the previous page, null for the first page
+     * @param limit - requested page size, null for the default, capped at the maximum page size
+     * @return page of question summaries for user with the token of the next page
+     * @throws UserNotFoundException - thrown if there is no user with the uuid
+     * @throws InvalidPaginationException - thrown if the page token or the page size is invalid
      */
-    @Transactional(propagation = Propagation.REQUIRED)
-    public List<QuestionEntity> getAllQuestionsByUser (final String userUuid) throws UserNotFoundException {
+    public Page<QuestionSummary> getAllQuestionsByUser(final String userUuid, final String pageToken, final Integer limit)
+            throws UserNotFoundException, InvalidPaginationException {
+        final int pageSize = pageSize(limit);
+        final KeysetPageToken after = pageToken == null || pageToken.isEmpty() ? null : KeysetPageToken.decode(pageToken);
 
-        UserEntity userEntity=commonService.getUserByUuid(userUuid);
-        List<QuestionEntity> questionEntityList=questionDao.getAllQuestionsByUser(userEntity.getId());
-        return questionEntityList;
+        // One row more than the page tells whether there is a next page.
+        List<QuestionSummary> questions = after == null
+                ? questionDao.getQuestionsPageByUser(userUuid, null, null, pageSize + 1)
+                : questionDao.getQuestionsPageByUser(userUuid, after.getDate(), after.getIntId(), pageSize + 1);
+        if (questions == null) {
+            throw new UserNotFoundException("USR-001", "User with entered uuid does not exist");
+        }
+        if (questions.size() <= pageSize) {
+            return new Page<>(questions, null);
+        }
+        questions = questions.subList(0, pageSize);
+        QuestionSummary last = questions.get(pageSize - 1);
+        return new Page<>(questions, new KeysetPageToken(last.getDate(), last.getId()).encode());
     }
 
     /**
-     * This method takes questionId and auth token as argument and deletes the question after the user is verified.
+     * This method takes questionId and auth token as argument and deletes the question with one DELETE, which
+     * only matches a question of the user unless the user is an admin. Neither the question nor its answers are
+     * loaded, the answers go with the ON DELETE CASCADE.
      *
      * @param userAuthTokenEntity - authorized user entity
      * @param questionUuid - uuid of question which need to be deleted
-     * @return question entity which was deleted
+     * @throws AuthorizationFailedException - thrown if the user is neither the owner of the question nor an admin
+     * @throws InvalidQuestionException - thrown if the question with the provided uuid not present
      */
     @Transactional(propagation = Propagation.REQUIRED)
-    public QuestionEntity deleteQuestion(final UserAuthEntity userAuthTokenEntity, final String questionUuid) throws AuthorizationFailedException, InvalidQuestionException {
-
-
-        QuestionEntity questionEntity=questionDao.getQuestionByUuid(questionUuid);
-        if(questionEntity==null){
-            throw new InvalidQuestionException("QUES-001", "Entered question uuid does not exist");
-        }
-
-        if(userAuthTokenEntity.getUserEntity().getId()!=questionEntity.getUserEntity().getId() && questionEntity.getUserEntity().getRole()!="admin"){
+    public void deleteQuestion(final UserAuthEntity userAuthTokenEntity, final String questionUuid) throws AuthorizationFailedException, InvalidQuestionException {
+        final UserEntity user = userAuthTokenEntity.getUserEntity();
+        final Integer questionId = questionDao.deleteQuestion(questionUuid, "admin".equals(user.getRole()) ? null : user.getId());
+        if(questionId == null){
+            // Missing or someone else's.
+            if(!questionDao.questionExists(questionUuid)){
+                throw new InvalidQuestionException("QUES-001", "Entered question uuid does not exist");
+            }
             throw new AuthorizationFailedException("ATHR-003","Only the question owner or admin can delete the question");
         }
-        questionDao.deleteQuestion(questionEntity);
-        return  questionEntity;
+
+        questionCache.invalidate(questionUuid);
+        contentSearchIndex.questionDeleted(questionId);
+        listingVersions.questionChanged(questionUuid);
+        latestQuestions.questionDeleted(questionId);
+        invalidationBus.questionDeleted(questionId, questionUuid);
     }
 
 
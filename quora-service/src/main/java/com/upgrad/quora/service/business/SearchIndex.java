@@ -0,0 +1,598 @@
+package com.upgrad.quora.service.business;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory inverted index over short texts keyed by their database id, ranked with BM25.
+ * Documents get dense internal ids in the order they are added and every term keeps its postings as two parallel
+ * int arrays of internal ids and term frequencies, so postings stay sorted and are scanned without boxing.
+ * Replacing or removing a document only marks its internal id dead, compact drops the dead ids and renumbers.
+ * Searches share a read lock, changes take the write lock. A search scores into one of a few pooled accumulators
+ * sized to the internal ids, at most one per processor, as searches beyond that could only wait for a processor.
+ */
+public class SearchIndex {
+
+    /**
+     * Parent of documents which do not belong to another document.
+     */
+    public static final int NO_PARENT = -1;
+
+    private static final float K1 = 1.2f;
+
+    private static final float B = 0.75f;
+
+    private static final int MAX_QUERY_TERMS = 16;
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private static final int MAX_ACCUMULATORS = Runtime.getRuntime().availableProcessors();
+
+    private static final Set<String> STOP_WORDS = new HashSet<>(Arrays.asList(
+            "an", "and", "are", "as", "at", "be", "but", "by", "for", "if", "in", "into", "is", "it", "no", "not",
+            "of", "on", "or", "such", "that", "the", "their", "then", "there", "these", "they", "this", "to", "was",
+            "will", "with"));
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Idle score accumulators, so a search allocates almost nothing and their memory does not grow with the
+     * number of request threads.
+     */
+    private final BlockingQueue<Accumulator> accumulators = new ArrayBlockingQueue<>(MAX_ACCUMULATORS);
+
+    private final AtomicInteger createdAccumulators = new AtomicInteger();
+
+    private Map<String, Postings> postings = new HashMap<>();
+
+    private IntIntMap internalIds = new IntIntMap(INITIAL_CAPACITY);
+
+    private int[] ids = new int[INITIAL_CAPACITY];
+
+    private int[] owners = new int[INITIAL_CAPACITY];
+
+    private int[] parents = new int[INITIAL_CAPACITY];
+
+    private int[] lengths = new int[INITIAL_CAPACITY];
+
+    private String[] uuids = new String[INITIAL_CAPACITY];
+
+    private String[] texts = new String[INITIAL_CAPACITY];
+
+    private BitSet live = new BitSet();
+
+    /**
+     * Number of internal ids handed out, live or dead.
+     */
+    private int size;
+
+    private int liveCount;
+
+    private long totalLength;
+
+    /**
+     * Callback of removeIf.
+     */
+    public interface DocumentFilter {
+        boolean test(int id, int owner, int parent);
+    }
+
+    /**
+     * A matching document with its BM25 score.
+     */
+    public static final class Hit {
+
+        private final int id;
+
+        private final int parent;
+
+        private final String uuid;
+
+        private final String text;
+
+        private final float score;
+
+        Hit(final int id, final int parent, final String uuid, final String text, final float score) {
+            this.id = id;
+            this.parent = parent;
+            this.uuid = uuid;
+            this.text = text;
+            this.score = score;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public int getParent() {
+            return parent;
+        }
+
+        public String getUuid() {
+            return uuid;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public float getScore() {
+            return score;
+        }
+    }
+
+    /**
+     * Adds the document, replacing the document with the same id if there is one.
+     *
+     * @param id : Database id of the document.
+     * @param owner : Id of the user owning the document.
+     * @param parent : Id of the document this one belongs to, NO_PARENT if none.
+     * @param uuid : Uuid of the document, returned with the hits.
+     * @param text : Text to index, also returned with the hits.
+     */
+    public void put(final int id, final int owner, final int parent, final String uuid, final String text) {
+        final Map<String, int[]> frequencies = new HashMap<>();
+        final List<String> tokens = tokenize(text);
+        for (String token : tokens) {
+            frequencies.computeIfAbsent(token, key -> new int[1])[0]++;
+        }
+        lock.writeLock().lock();
+        try {
+            final int previous = internalIds.remove(id);
+            if (previous >= 0) {
+                kill(previous);
+            }
+            final int internal = size++;
+            if (internal == ids.length) {
+                grow(ids.length * 2);
+            }
+            ids[internal] = id;
+            owners[internal] = owner;
+            parents[internal] = parent;
+            lengths[internal] = tokens.size();
+            uuids[internal] = uuid;
+            texts[internal] = text;
+            live.set(internal);
+            liveCount++;
+            totalLength += tokens.size();
+            internalIds.put(id, internal);
+            for (Map.Entry<String, int[]> frequency : frequencies.entrySet()) {
+                postings.computeIfAbsent(frequency.getKey(), key -> new Postings())
+                        .add(internal, frequency.getValue()[0]);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param id : Database id of the document.
+     * @return true if the document was in the index.
+     */
+    public boolean remove(final int id) {
+        lock.writeLock().lock();
+        try {
+            final int internal = internalIds.remove(id);
+            if (internal < 0) {
+                return false;
+            }
+            kill(internal);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes every document accepted by the filter, scanning all documents.
+     *
+     * @param filter : Selects the documents to remove.
+     * @return database ids of the removed documents, in ascending order.
+     */
+    public int[] removeIf(final DocumentFilter filter) {
+        lock.writeLock().lock();
+        try {
+            int[] removed = new int[16];
+            int count = 0;
+            for (int internal = live.nextSetBit(0); internal >= 0; internal = live.nextSetBit(internal + 1)) {
+                if (filter.test(ids[internal], owners[internal], parents[internal])) {
+                    if (count == removed.length) {
+                        removed = Arrays.copyOf(removed, count * 2);
+                    }
+                    removed[count++] = ids[internal];
+                    internalIds.remove(ids[internal]);
+                    kill(internal);
+                }
+            }
+            removed = Arrays.copyOf(removed, count);
+            Arrays.sort(removed);
+            return removed;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param id : Database id of the document.
+     * @return the indexed text of the document, null if it is not in the index.
+     */
+    public String text(final int id) {
+        lock.readLock().lock();
+        try {
+            final int internal = internalIds.get(id);
+            return internal < 0 ? null : texts[internal];
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return number of documents in the index.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return liveCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return number of replaced or removed documents still taking space until the next compaction.
+     */
+    public int deadCount() {
+        lock.readLock().lock();
+        try {
+            return size - liveCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Ranks the documents containing any of the query terms with BM25, best first, ties broken by descending id.
+     *
+     * @param query : Search text, split into terms like the indexed texts.
+     * @param limit : Maximum number of hits to return.
+     * @param afterScore : Score of the last hit of the previous page, null for the first page.
+     * @param afterId : Id of the last hit of the previous page.
+     * @return hits ordered by score and id, descending.
+     */
+    public List<Hit> search(final String query, final int limit, final Float afterScore, final Integer afterId) {
+        final Set<String> terms = new LinkedHashSet<>(tokenize(query));
+        if (terms.isEmpty() || limit < 1) {
+            return Collections.emptyList();
+        }
+        final Accumulator accumulator = acquireAccumulator();
+        lock.readLock().lock();
+        try {
+            accumulator.ensureCapacity(size);
+            final float averageLength = liveCount == 0 ? 1f : (float) totalLength / liveCount;
+            int termCount = 0;
+            for (String term : terms) {
+                if (termCount++ == MAX_QUERY_TERMS) {
+                    break;
+                }
+                final Postings termPostings = postings.get(term);
+                if (termPostings != null) {
+                    accumulate(accumulator, termPostings, averageLength);
+                }
+            }
+            return topHits(accumulator, limit, afterScore, afterId);
+        } finally {
+            lock.readLock().unlock();
+            accumulator.reset();
+            accumulators.offer(accumulator);
+        }
+    }
+
+    /**
+     * Drops the dead documents from the postings and renumbers the live ones, keeping their order.
+     */
+    public void compact() {
+        lock.writeLock().lock();
+        try {
+            if (liveCount == size) {
+                return;
+            }
+            final int[] renumbered = new int[size];
+            final int capacity = Math.max(INITIAL_CAPACITY, Integer.highestOneBit(Math.max(1, liveCount)) << 1);
+            final int[] newIds = new int[capacity];
+            final int[] newOwners = new int[capacity];
+            final int[] newParents = new int[capacity];
+            final int[] newLengths = new int[capacity];
+            final String[] newUuids = new String[capacity];
+            final String[] newTexts = new String[capacity];
+            final IntIntMap newInternalIds = new IntIntMap(capacity);
+            int next = 0;
+            for (int internal = 0; internal < size; internal++) {
+                if (!live.get(internal)) {
+                    renumbered[internal] = -1;
+                    continue;
+                }
+                renumbered[internal] = next;
+                newIds[next] = ids[internal];
+                newOwners[next] = owners[internal];
+                newParents[next] = parents[internal];
+                newLengths[next] = lengths[internal];
+                newUuids[next] = uuids[internal];
+                newTexts[next] = texts[internal];
+                newInternalIds.put(ids[internal], next);
+                next++;
+            }
+            final Map<String, Postings> newPostings = new HashMap<>(postings.size() * 2);
+            for (Map.Entry<String, Postings> entry : postings.entrySet()) {
+                final Postings compacted = entry.getValue().renumber(renumbered);
+                if (compacted.size > 0) {
+                    newPostings.put(entry.getKey(), compacted);
+                }
+            }
+            postings = newPostings;
+            internalIds = newInternalIds;
+            ids = newIds;
+            owners = newOwners;
+            parents = newParents;
+            lengths = newLengths;
+            uuids = newUuids;
+            texts = newTexts;
+            live = new BitSet(capacity);
+            live.set(0, next);
+            size = next;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Splits on anything but letters and digits, lowercases, and drops single characters and stop words.
+     *
+     * @param text : Text to split.
+     * @return terms in the order they appear, with repetitions.
+     */
+    public static List<String> tokenize(final String text) {
+        final List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        final StringBuilder token = new StringBuilder();
+        for (int i = 0; i <= text.length(); i++) {
+            final char c = i < text.length() ? text.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                token.append(Character.toLowerCase(c));
+            } else if (token.length() > 0) {
+                final String term = token.toString();
+                if (term.length() > 1 && !STOP_WORDS.contains(term)) {
+                    tokens.add(term);
+                }
+                token.setLength(0);
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Takes an idle accumulator, creates one while there are fewer than MAX_ACCUMULATORS, or waits for one.
+     */
+    private Accumulator acquireAccumulator() {
+        final Accumulator idle = accumulators.poll();
+        if (idle != null) {
+            return idle;
+        }
+        if (createdAccumulators.incrementAndGet() <= MAX_ACCUMULATORS) {
+            return new Accumulator();
+        }
+        createdAccumulators.decrementAndGet();
+        try {
+            return accumulators.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new Accumulator();
+        }
+    }
+
+    private void kill(final int internal) {
+        live.clear(internal);
+        uuids[internal] = null;
+        texts[internal] = null;
+        liveCount--;
+        totalLength -= lengths[internal];
+    }
+
+    private void grow(final int capacity) {
+        ids = Arrays.copyOf(ids, capacity);
+        owners = Arrays.copyOf(owners, capacity);
+        parents = Arrays.copyOf(parents, capacity);
+        lengths = Arrays.copyOf(lengths, capacity);
+        uuids = Arrays.copyOf(uuids, capacity);
+        texts = Arrays.copyOf(texts, capacity);
+    }
+
+    /**
+     * Adds the BM25 contribution of one term to every live document containing it.
+     * The document frequency counts dead postings too until the next compaction.
+     */
+    private void accumulate(final Accumulator accumulator, final Postings termPostings, final float averageLength) {
+        final int documentFrequency = termPostings.size;
+        final float idf = (float) Math.log(1 + (liveCount - documentFrequency + 0.5) / (documentFrequency + 0.5));
+        if (idf <= 0) {
+            return;
+        }
+        final float[] scores = accumulator.scores;
+        final int[] documents = termPostings.documents;
+        final int[] frequencies = termPostings.frequencies;
+        final float lengthWeight = K1 * B / averageLength;
+        final float constantWeight = K1 * (1 - B);
+        for (int i = 0; i < documentFrequency; i++) {
+            final int internal = documents[i];
+            if (!live.get(internal)) {
+                continue;
+            }
+            final int frequency = frequencies[i];
+            final float contribution = idf * frequency * (K1 + 1)
+                    / (frequency + constantWeight + lengthWeight * lengths[internal]);
+            if (scores[internal] == 0) {
+                accumulator.touch(internal);
+            }
+            scores[internal] += contribution;
+        }
+    }
+
+    /**
+     * Picks the best hits after the page position with a bounded min-heap.
+     */
+    private List<Hit> topHits(final Accumulator accumulator, final int limit, final Float afterScore,
+                              final Integer afterId) {
+        final float[] scores = accumulator.scores;
+        final int[] heap = new int[Math.min(limit, Math.max(1, accumulator.touchedCount))];
+        int heapSize = 0;
+        for (int t = 0; t < accumulator.touchedCount; t++) {
+            final int internal = accumulator.touched[t];
+            final float score = scores[internal];
+            if (afterScore != null && !ranksBelow(score, ids[internal], afterScore, afterId)) {
+                continue;
+            }
+            if (heapSize < heap.length) {
+                heap[heapSize] = internal;
+                siftUp(heap, heapSize++, scores);
+            } else if (ranksBelow(scores[heap[0]], ids[heap[0]], score, ids[internal])) {
+                heap[0] = internal;
+                siftDown(heap, heapSize, scores);
+            }
+        }
+        final Hit[] hits = new Hit[heapSize];
+        for (int i = heapSize - 1; i >= 0; i--) {
+            final int internal = heap[0];
+            hits[i] = new Hit(ids[internal], parents[internal], uuids[internal], texts[internal], scores[internal]);
+            heap[0] = heap[i];
+            siftDown(heap, i, scores);
+        }
+        return Arrays.asList(hits);
+    }
+
+    /**
+     * @return true if the first (score, id) comes after the second one in the descending order of hits.
+     */
+    private static boolean ranksBelow(final float score, final int id, final float otherScore, final int otherId) {
+        return score < otherScore || (score == otherScore && id < otherId);
+    }
+
+    private void siftUp(final int[] heap, int index, final float[] scores) {
+        final int internal = heap[index];
+        while (index > 0) {
+            final int parent = (index - 1) >>> 1;
+            if (!ranksBelow(scores[internal], ids[internal], scores[heap[parent]], ids[heap[parent]])) {
+                break;
+            }
+            heap[index] = heap[parent];
+            index = parent;
+        }
+        heap[index] = internal;
+    }
+
+    private void siftDown(final int[] heap, final int heapSize, final float[] scores) {
+        if (heapSize == 0) {
+            return;
+        }
+        final int internal = heap[0];
+        int index = 0;
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize
+                    && ranksBelow(scores[heap[child + 1]], ids[heap[child + 1]], scores[heap[child]], ids[heap[child]])) {
+                child++;
+            }
+            if (!ranksBelow(scores[heap[child]], ids[heap[child]], scores[internal], ids[internal])) {
+                break;
+            }
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = internal;
+    }
+
+    /**
+     * Internal ids and frequencies of the documents containing a term, in ascending internal id order.
+     */
+    private static final class Postings {
+
+        private int[] documents = new int[4];
+
+        private int[] frequencies = new int[4];
+
+        private int size;
+
+        void add(final int internal, final int frequency) {
+            if (size == documents.length) {
+                documents = Arrays.copyOf(documents, size * 2);
+                frequencies = Arrays.copyOf(frequencies, size * 2);
+            }
+            documents[size] = internal;
+            frequencies[size] = frequency;
+            size++;
+        }
+
+        Postings renumber(final int[] renumbered) {
+            final Postings compacted = new Postings();
+            compacted.documents = new int[Math.max(4, size)];
+            compacted.frequencies = new int[compacted.documents.length];
+            for (int i = 0; i < size; i++) {
+                final int internal = renumbered[documents[i]];
+                if (internal >= 0) {
+                    compacted.documents[compacted.size] = internal;
+                    compacted.frequencies[compacted.size] = frequencies[i];
+                    compacted.size++;
+                }
+            }
+            return compacted;
+        }
+    }
+
+    /**
+     * Scores indexed by internal id, with the list of non zero entries so that resetting costs only the matches.
+     */
+    private static final class Accumulator {
+
+        private float[] scores = new float[0];
+
+        private int[] touched = new int[64];
+
+        private int touchedCount;
+
+        void ensureCapacity(final int capacity) {
+            if (scores.length < capacity) {
+                // Some room for the documents added until the next search.
+                scores = new float[capacity + (capacity >> 3)];
+            }
+        }
+
+        void touch(final int internal) {
+            if (touchedCount == touched.length) {
+                touched = Arrays.copyOf(touched, touchedCount * 2);
+            }
+            touched[touchedCount++] = internal;
+        }
+
+        void reset() {
+            for (int t = 0; t < touchedCount; t++) {
+                scores[touched[t]] = 0;
+            }
+            touchedCount = 0;
+        }
+    }
+}
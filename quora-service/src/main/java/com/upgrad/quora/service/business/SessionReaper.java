@@ -0,0 +1,157 @@
+package com.upgrad.quora.service.business;
+
+import com.upgrad.quora.service.dao.UserAuthDao;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Background job removing USER_AUTH rows which can no longer authorize anything: sessions past expires_at and
+ * sessions signed out longer ago than the retention. Rows are deleted in small batches with a pause in between.
+ * It also keeps the monthly USER_AUTH partitions ahead of time and drops partitions whose sessions have all
+ * expired, which is much cheaper than deleting their rows.
+ */
+@Component
+public class SessionReaper {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SessionReaper.class);
+
+    private static final Pattern PARTITION_NAME = Pattern.compile("user_auth_(\\d{4})_(\\d{2})");
+
+    private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.ofPattern("yyyy_MM");
+
+    @Value("${quora.auth.session-reaper.enabled:true}")
+    private boolean enabled;
+
+    @Value("${quora.auth.session-reaper.batch-size:500}")
+    private int batchSize;
+
+    @Value("${quora.auth.session-reaper.batch-pause-millis:100}")
+    private long batchPauseMillis;
+
+    @Value("${quora.auth.session-reaper.logout-retention-hours:8}")
+    private long logoutRetentionHours;
+
+    @Value("${quora.auth.session-reaper.partition-retention-months:1}")
+    private int partitionRetentionMonths;
+
+    @Autowired private UserAuthDao userAuthDao;
+
+    @Autowired private PlatformTransactionManager transactionManager;
+
+    @Autowired private MeterRegistry meterRegistry;
+
+    private TransactionTemplate transactionTemplate;
+
+    private Counter rowsReclaimed;
+
+    private Counter partitionsDropped;
+
+    @PostConstruct
+    public void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        rowsReclaimed = Counter.builder("quora.auth.session-reaper.rows-reclaimed").register(meterRegistry);
+        partitionsDropped = Counter.builder("quora.auth.session-reaper.partitions-dropped").register(meterRegistry);
+    }
+
+    @Scheduled(
+            initialDelayString = "${quora.auth.session-reaper.initial-delay-millis:60000}",
+            fixedDelayString = "${quora.auth.session-reaper.interval-millis:600000}")
+    public void reap() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            maintainPartitions(LocalDate.now());
+            long reclaimed = reapRows();
+            LOGGER.info("Session reaper reclaimed {} USER_AUTH rows", reclaimed);
+        } catch (RuntimeException e) {
+            LOGGER.error("Session reaper run failed", e);
+        }
+    }
+
+    /**
+     * Deletes expired and signed out sessions batch by batch, each batch in its own transaction.
+     *
+     * @return Number of rows deleted.
+     */
+    public long reapRows() {
+        final ZonedDateTime now = ZonedDateTime.now();
+        final ZonedDateTime loggedOutBefore = now.minusHours(logoutRetentionHours);
+        long total = 0;
+        while (true) {
+            Integer deleted = transactionTemplate.execute(
+                    status -> userAuthDao.deleteExpiredSessions(now, loggedOutBefore, batchSize));
+            total += deleted;
+            rowsReclaimed.increment(deleted);
+            if (deleted < batchSize) {
+                return total;
+            }
+            try {
+                Thread.sleep(batchPauseMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return total;
+            }
+        }
+    }
+
+    /**
+     * Creates the missing partitions for this and the next month, moving the rows of the month which the default
+     * partition holds into them, and drops the monthly partitions past retention.
+     *
+     * @param today : Current date.
+     */
+    public void maintainPartitions(final LocalDate today) {
+        final LocalDate thisMonth = today.withDayOfMonth(1);
+        final List<String> partitions = userAuthDao.getSessionPartitions();
+        for (LocalDate month : new LocalDate[]{thisMonth, thisMonth.plusMonths(1)}) {
+            final String partition = "user_auth_" + month.format(PARTITION_SUFFIX);
+            if (partitions.contains(partition)) {
+                continue;
+            }
+            try {
+                final Integer moved = transactionTemplate.execute(
+                        status -> userAuthDao.createSessionPartition(partition, month, month.plusMonths(1)));
+                LOGGER.info("Session reaper created USER_AUTH partition {} with {} rows from the default partition",
+                        partition, moved);
+            } catch (RuntimeException e) {
+                // Another node may have created it first, the next run sees it.
+                LOGGER.warn("Could not create USER_AUTH partition for {}", month, e);
+            }
+        }
+
+        final LocalDate dropBefore = thisMonth.minusMonths(partitionRetentionMonths);
+        for (String partition : partitions) {
+            Matcher matcher = PARTITION_NAME.matcher(partition);
+            if (!matcher.matches()) {
+                continue;
+            }
+            LocalDate month = LocalDate.of(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)), 1);
+            if (month.plusMonths(1).isAfter(dropBefore)) {
+                continue;
+            }
+            transactionTemplate.execute(status -> {
+                userAuthDao.dropSessionPartition(partition);
+                return null;
+            });
+            partitionsDropped.increment();
+            LOGGER.info("Session reaper dropped USER_AUTH partition {}", partition);
+        }
+    }
+}
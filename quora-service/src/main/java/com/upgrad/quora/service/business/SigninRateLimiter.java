@@ -0,0 +1,144 @@
+package com.upgrad.quora.service.business;
+
+import com.upgrad.quora.service.exception.RateLimitExceededException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token bucket limiter for signin attempts, one bucket per username and one per client address.
+ * Each bucket is a single AtomicLong holding its theoretical arrival time (the GCRA form of a token bucket),
+ * so taking a token is one compare-and-set on a ConcurrentHashMap entry and needs no lock.
+ * A bucket that has refilled completely is idle and can be dropped without losing anything, which is how the
+ * map is kept bounded. Other buckets are never dropped: when the map is full and no bucket is idle, attempts
+ * which would need a new bucket are throttled until buckets refill.
+ */
+@Component
+public class SigninRateLimiter {
+
+    @Value("${quora.auth.signin-limit.enabled:true}")
+    private boolean enabled;
+
+    @Value("${quora.auth.signin-limit.user-burst:10}")
+    private int userBurst;
+
+    @Value("${quora.auth.signin-limit.user-per-minute:10}")
+    private int userPerMinute;
+
+    @Value("${quora.auth.signin-limit.address-burst:30}")
+    private int addressBurst;
+
+    @Value("${quora.auth.signin-limit.address-per-minute:60}")
+    private int addressPerMinute;
+
+    @Value("${quora.auth.signin-limit.max-buckets:100000}")
+    private int maxBuckets;
+
+    @Autowired private MeterRegistry meterRegistry;
+
+    private final Map<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+
+    /**
+     * Time before which a full map is not scanned again for idle buckets.
+     */
+    private final AtomicLong nextEviction = new AtomicLong(System.nanoTime());
+
+    private Counter throttled;
+
+    @PostConstruct
+    public void registerMetrics() {
+        throttled = Counter.builder("quora.auth.signin-limit.throttled").register(meterRegistry);
+        Gauge.builder("quora.auth.signin-limit.buckets", buckets, Map::size).register(meterRegistry);
+    }
+
+    /**
+     * Takes a token from the client address bucket and from the username bucket, or from neither: the address
+     * token is given back when the username bucket is empty. Must be called before the signin transaction starts,
+     * so that throttled attempts do not hold a database connection.
+     *
+     * @param userName : username the client tries to sign in as.
+     * @param clientAddress : address of the client, may be null.
+     * @throws RateLimitExceededException : If either bucket is empty.
+     */
+    public void acquire(final String userName, final String clientAddress) throws RateLimitExceededException {
+        if (!enabled) {
+            return;
+        }
+        final String addressKey = clientAddress == null ? null : "a:" + clientAddress;
+        if (addressKey != null && !tryAcquire(addressKey, addressBurst, addressPerMinute)) {
+            throw throttled();
+        }
+        if (userName != null && !tryAcquire("u:" + userName.toLowerCase(Locale.ROOT), userBurst, userPerMinute)) {
+            if (addressKey != null) {
+                release(addressKey, addressPerMinute);
+            }
+            throw throttled();
+        }
+    }
+
+    private boolean tryAcquire(final String key, final int burst, final int perMinute) {
+        final long interval = TimeUnit.MINUTES.toNanos(1) / perMinute;
+        final long tolerance = interval * burst;
+
+        AtomicLong bucket = buckets.get(key);
+        if (bucket == null) {
+            if (buckets.size() >= maxBuckets && !evictIdle()) {
+                return false;
+            }
+            bucket = buckets.computeIfAbsent(key, k -> new AtomicLong(Long.MIN_VALUE));
+        }
+
+        while (true) {
+            final long now = System.nanoTime();
+            final long arrival = bucket.get();
+            final long next = (arrival == Long.MIN_VALUE || arrival - now < 0 ? now : arrival) + interval;
+            if (next - now > tolerance) {
+                return false;
+            }
+            if (bucket.compareAndSet(arrival, next)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Gives back a token taken by tryAcquire. A bucket dropped meanwhile was full, there is nothing to give back.
+     */
+    private void release(final String key, final int perMinute) {
+        final AtomicLong bucket = buckets.get(key);
+        if (bucket != null) {
+            bucket.addAndGet(-TimeUnit.MINUTES.toNanos(1) / perMinute);
+        }
+    }
+
+    /**
+     * Drops the buckets which have refilled completely. The map is scanned at most once per shortest refill
+     * interval, so attempts on a map full of active buckets do not each scan it.
+     *
+     * @return whether there is room for a new bucket.
+     */
+    private boolean evictIdle() {
+        final long now = System.nanoTime();
+        final long scanAt = nextEviction.get();
+        final long shortestInterval = TimeUnit.MINUTES.toNanos(1) / Math.max(userPerMinute, addressPerMinute);
+        if (now - scanAt >= 0 && nextEviction.compareAndSet(scanAt, now + shortestInterval)) {
+            buckets.values().removeIf(bucket -> bucket.get() - now <= 0);
+        }
+        return buckets.size() < maxBuckets;
+    }
+
+    private RateLimitExceededException throttled() {
+        throttled.increment();
+        return new RateLimitExceededException("ATH-003", "Too many signin attempts, please try again later");
+    }
+}
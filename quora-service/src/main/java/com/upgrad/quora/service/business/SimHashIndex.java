@@ -0,0 +1,355 @@
+package com.upgrad.quora.service.business;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory near-duplicate index over short texts keyed by their database id. Every text is reduced to a 64 bit
+ * SimHash of its words, so texts with the same words in any order, case or punctuation get the same hash and
+ * texts differing in a word or two out of many differ in a few bits.
+ * The hash is split into four 16 bit bands and every band value keeps the internal ids of the texts having it, so
+ * texts within MAX_DISTANCE bits, which share at least one band by the pigeonhole principle, are found by looking
+ * at four buckets only. Candidates are confirmed on the full hash.
+ * Replacing or removing a text only marks its internal id dead, compact drops the dead ids and renumbers.
+ * Lookups share a read lock, changes take the write lock.
+ */
+public class SimHashIndex {
+
+    /**
+     * Largest Hamming distance which is always found.
+     */
+    public static final int MAX_DISTANCE = 3;
+
+    private static final int BANDS = 4;
+
+    private static final int BAND_BITS = 16;
+
+    private static final int BUCKETS = 1 << BAND_BITS;
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private static final int[] NO_DOCUMENTS = new int[0];
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Internal ids per band and band value, the first size of every bucket are in use.
+     */
+    private final int[][][] buckets = new int[BANDS][BUCKETS][];
+
+    private final int[][] bucketSizes = new int[BANDS][BUCKETS];
+
+    private IntIntMap internalIds = new IntIntMap(INITIAL_CAPACITY);
+
+    private long[] hashes = new long[INITIAL_CAPACITY];
+
+    private int[] ids = new int[INITIAL_CAPACITY];
+
+    private String[] uuids = new String[INITIAL_CAPACITY];
+
+    private BitSet live = new BitSet();
+
+    /**
+     * Number of internal ids handed out, live or dead.
+     */
+    private int size;
+
+    private int liveCount;
+
+    /**
+     * A text within the requested distance of the probe.
+     */
+    public static final class Match {
+
+        private final int id;
+
+        private final String uuid;
+
+        private final int distance;
+
+        Match(final int id, final String uuid, final int distance) {
+            this.id = id;
+            this.uuid = uuid;
+            this.distance = distance;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public String getUuid() {
+            return uuid;
+        }
+
+        /**
+         * @return number of differing bits between the SimHashes, 0 for texts with the same words.
+         */
+        public int getDistance() {
+            return distance;
+        }
+    }
+
+    public SimHashIndex() {
+        for (int[][] band : buckets) {
+            Arrays.fill(band, NO_DOCUMENTS);
+        }
+    }
+
+    /**
+     * Adds the text, replacing the previous text with the same id. Texts without any word are not indexed.
+     *
+     * @param id : Database id of the text.
+     * @param uuid : Uuid of the text, returned with the matches.
+     * @param text : Text to index.
+     */
+    public void put(final int id, final String uuid, final String text) {
+        final List<String> tokens = SearchIndex.tokenize(text);
+        final long hash = simHash(tokens);
+        lock.writeLock().lock();
+        try {
+            final int previous = internalIds.remove(id);
+            if (previous >= 0) {
+                kill(previous);
+            }
+            if (tokens.isEmpty()) {
+                return;
+            }
+            final int internal = size++;
+            if (internal == ids.length) {
+                hashes = Arrays.copyOf(hashes, ids.length * 2);
+                uuids = Arrays.copyOf(uuids, ids.length * 2);
+                ids = Arrays.copyOf(ids, ids.length * 2);
+            }
+            hashes[internal] = hash;
+            ids[internal] = id;
+            uuids[internal] = uuid;
+            live.set(internal);
+            liveCount++;
+            internalIds.put(id, internal);
+            for (int band = 0; band < BANDS; band++) {
+                addToBucket(band, band(hash, band), internal);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param id : Database id of the text.
+     * @return true if the text was in the index.
+     */
+    public boolean remove(final int id) {
+        lock.writeLock().lock();
+        try {
+            final int internal = internalIds.remove(id);
+            if (internal < 0) {
+                return false;
+            }
+            kill(internal);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return number of texts in the index.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return liveCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return number of replaced or removed texts still taking space until the next compaction.
+     */
+    public int deadCount() {
+        lock.readLock().lock();
+        try {
+            return size - liveCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the indexed texts whose SimHash is within maxDistance bits of the SimHash of the text.
+     *
+     * @param text : Text to look for.
+     * @param maxDistance : Largest Hamming distance to return, at most MAX_DISTANCE.
+     * @param limit : Maximum number of matches to return.
+     * @return matches ordered by distance, then by descending id.
+     */
+    public List<Match> find(final String text, final int maxDistance, final int limit) {
+        final List<String> tokens = SearchIndex.tokenize(text);
+        if (tokens.isEmpty() || limit < 1) {
+            return Collections.emptyList();
+        }
+        final long hash = simHash(tokens);
+        final int distance = Math.min(maxDistance, MAX_DISTANCE);
+        final List<Match> matches = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (int band = 0; band < BANDS; band++) {
+                final int value = band(hash, band);
+                final int[] bucket = buckets[band][value];
+                final int bucketSize = bucketSizes[band][value];
+                for (int i = 0; i < bucketSize; i++) {
+                    final int internal = bucket[i];
+                    if (!live.get(internal) || firstSharedBand(hash, hashes[internal]) != band) {
+                        // Dead, or already seen in an earlier band.
+                        continue;
+                    }
+                    final int bits = Long.bitCount(hash ^ hashes[internal]);
+                    if (bits <= distance) {
+                        matches.add(new Match(ids[internal], uuids[internal], bits));
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        matches.sort((a, b) -> a.distance != b.distance ? Integer.compare(a.distance, b.distance)
+                : Integer.compare(b.id, a.id));
+        return matches.size() > limit ? new ArrayList<>(matches.subList(0, limit)) : matches;
+    }
+
+    /**
+     * Drops the dead texts from the buckets and renumbers the live ones, keeping their order.
+     */
+    public void compact() {
+        lock.writeLock().lock();
+        try {
+            if (liveCount == size) {
+                return;
+            }
+            final int capacity = Math.max(INITIAL_CAPACITY, Integer.highestOneBit(Math.max(1, liveCount)) << 1);
+            final long[] newHashes = new long[capacity];
+            final int[] newIds = new int[capacity];
+            final String[] newUuids = new String[capacity];
+            final IntIntMap newInternalIds = new IntIntMap(capacity);
+            int next = 0;
+            for (int internal = live.nextSetBit(0); internal >= 0; internal = live.nextSetBit(internal + 1)) {
+                newHashes[next] = hashes[internal];
+                newIds[next] = ids[internal];
+                newUuids[next] = uuids[internal];
+                newInternalIds.put(ids[internal], next);
+                next++;
+            }
+            for (int band = 0; band < BANDS; band++) {
+                Arrays.fill(buckets[band], NO_DOCUMENTS);
+                Arrays.fill(bucketSizes[band], 0);
+            }
+            hashes = newHashes;
+            ids = newIds;
+            uuids = newUuids;
+            internalIds = newInternalIds;
+            live = new BitSet(capacity);
+            live.set(0, next);
+            size = next;
+            for (int internal = 0; internal < next; internal++) {
+                for (int band = 0; band < BANDS; band++) {
+                    addToBucket(band, band(hashes[internal], band), internal);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * SimHash over the words of the text, split like the search index does, each occurrence weighing one.
+     *
+     * @param text : Text to hash.
+     * @return 64 bit SimHash, 0 for a text without words.
+     */
+    public static long simHash(final String text) {
+        return simHash(SearchIndex.tokenize(text));
+    }
+
+    private static long simHash(final List<String> tokens) {
+        if (tokens.isEmpty()) {
+            return 0;
+        }
+        final int[] weights = new int[Long.SIZE];
+        for (String token : tokens) {
+            addFeature(weights, hash(token));
+        }
+        long simHash = 0;
+        for (int bit = 0; bit < Long.SIZE; bit++) {
+            if (weights[bit] > 0) {
+                simHash |= 1L << bit;
+            }
+        }
+        return simHash;
+    }
+
+    private static void addFeature(final int[] weights, final long feature) {
+        final long mixed = mix(feature);
+        for (int bit = 0; bit < Long.SIZE; bit++) {
+            weights[bit] += ((mixed >>> bit) & 1) == 0 ? -1 : 1;
+        }
+    }
+
+    /**
+     * 64 bit FNV-1a over the characters of the word.
+     */
+    private static long hash(final String word) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < word.length(); i++) {
+            hash ^= word.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Finalizer of MurmurHash3, spreads every input bit over the whole hash.
+     */
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private static int band(final long hash, final int band) {
+        return (int) (hash >>> (band * BAND_BITS)) & (BUCKETS - 1);
+    }
+
+    private static int firstSharedBand(final long hash, final long other) {
+        for (int band = 0; band < BANDS; band++) {
+            if (band(hash, band) == band(other, band)) {
+                return band;
+            }
+        }
+        return -1;
+    }
+
+    private void addToBucket(final int band, final int value, final int internal) {
+        int[] bucket = buckets[band][value];
+        final int bucketSize = bucketSizes[band][value];
+        if (bucketSize == bucket.length) {
+            bucket = Arrays.copyOf(bucket, Math.max(4, bucketSize * 2));
+            buckets[band][value] = bucket;
+        }
+        bucket[bucketSize] = internal;
+        bucketSizes[band][value] = bucketSize + 1;
+    }
+
+    private void kill(final int internal) {
+        live.clear(internal);
+        uuids[internal] = null;
+        liveCount--;
+    }
+}
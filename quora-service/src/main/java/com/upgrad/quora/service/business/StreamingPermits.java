@@ -0,0 +1,52 @@
+package com.upgrad.quora.service.business;
+
+import com.upgrad.quora.service.exception.ServiceBusyException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Caps the number of listings streamed at the same time, every stream holds an async request thread for as long
+ * as the client takes to read it. When every permit is taken the stream is rejected right away.
+ */
+@Component
+public class StreamingPermits {
+
+    @Value("${quora.streaming.max-concurrent:16}")
+    private int maxConcurrent;
+
+    @Autowired private MeterRegistry meterRegistry;
+
+    private Semaphore permits;
+
+    private Counter rejections;
+
+    @PostConstruct
+    public void start() {
+        permits = new Semaphore(maxConcurrent);
+        rejections = Counter.builder("quora.streaming.rejected").register(meterRegistry);
+        Gauge.builder("quora.streaming.active", permits, p -> maxConcurrent - p.availablePermits()).register(meterRegistry);
+    }
+
+    /**
+     * Takes a permit for one stream, it must be released once the stream is written.
+     *
+     * @throws ServiceBusyException : If the maximum number of streams is already being written.
+     */
+    public void acquire() throws ServiceBusyException {
+        if (!permits.tryAcquire()) {
+            rejections.increment();
+            throw new ServiceBusyException("GEN-002", "Server is busy, please try again shortly");
+        }
+    }
+
+    public void release() {
+        permits.release();
+    }
+}
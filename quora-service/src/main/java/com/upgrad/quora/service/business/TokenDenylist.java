@@ -0,0 +1,126 @@
+package com.upgrad.quora.service.business;
+
+import com.upgrad.quora.service.dao.UserAuthDao;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.time.ZonedDateTime;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-memory list of revoked access tokens, keyed by token id (the USER_AUTH uuid), so that statelessly verified
+ * tokens can still be signed out. An entry is only kept until the token it revokes would have expired anyway.
+ * The list is rebuilt from the signed out USER_AUTH rows at startup, revocations made on other nodes arrive
+ * through the InvalidationBus. User deletions are not kept anywhere once their USER_AUTH rows are gone, so the
+ * tokens issued before startup are never trusted on their signature alone and are checked against USER_AUTH.
+ */
+@Component
+public class TokenDenylist {
+
+    /**
+     * How long a user deletion revokes tokens for, the lifetime of an access token.
+     */
+    private static final long TOKEN_LIFETIME_MILLIS = 8 * 60 * 60 * 1000L;
+
+    @Autowired private UserAuthDao userAuthDao;
+
+    private final Map<UUID, Long> revokedTokens = new ConcurrentHashMap<>();
+
+    private final Map<String, Long> revokedUsers = new ConcurrentHashMap<>();
+
+    private final AtomicInteger revocationsSincePurge = new AtomicInteger();
+
+    /**
+     * Tokens issued before this time may have been revoked while revocations were not being received.
+     */
+    private volatile long untrustedBefore;
+
+    @PostConstruct
+    public void loadRevokedSessions() {
+        distrustIssuedBefore(System.currentTimeMillis());
+        for (Object[] session : userAuthDao.getRevokedSessions(ZonedDateTime.now())) {
+            revoke((String) session[0], (ZonedDateTime) session[1]);
+        }
+    }
+
+    /**
+     * Revokes a token until its expiry.
+     *
+     * @param tokenId : jti of the token, the uuid of the USER_AUTH row.
+     * @param expiresAt : expiry of the token.
+     */
+    public void revoke(final String tokenId, final ZonedDateTime expiresAt) {
+        final UUID key = toKey(tokenId);
+        if (key != null) {
+            revokedTokens.put(key, expiresAt.toInstant().toEpochMilli());
+            if (revocationsSincePurge.incrementAndGet() >= 1024) {
+                purge();
+            }
+        }
+    }
+
+    /**
+     * Revokes every token issued to the user up to now.
+     *
+     * @param userUuid : uuid of the user.
+     */
+    public void revokeUser(final String userUuid) {
+        revokedUsers.put(userUuid, System.currentTimeMillis());
+    }
+
+    /**
+     * @param tokenId : jti of the token.
+     * @param userUuid : subject of the token.
+     * @param issuedAtMillis : issue time of the token.
+     * @return true if the token was signed out or its user was deleted after it was issued.
+     */
+    public boolean isRevoked(final String tokenId, final String userUuid, final long issuedAtMillis) {
+        final UUID key = toKey(tokenId);
+        if (key == null || revokedTokens.containsKey(key)) {
+            return true;
+        }
+        final Long userRevokedAt = revokedUsers.get(userUuid);
+        return userRevokedAt != null && issuedAtMillis <= userRevokedAt;
+    }
+
+    /**
+     * Marks every token issued up to now as possibly revoked without this node knowing, they are then checked
+     * against USER_AUTH instead of being trusted on their signature.
+     *
+     * @param millis : epoch millis up to which tokens are no longer trusted.
+     */
+    public void distrustIssuedBefore(final long millis) {
+        untrustedBefore = Math.max(untrustedBefore, millis);
+    }
+
+    /**
+     * @param issuedAtMillis : issue time of the token.
+     * @return false if revocations of the token may have been missed.
+     */
+    public boolean isTrusted(final long issuedAtMillis) {
+        return issuedAtMillis > untrustedBefore;
+    }
+
+    public int size() {
+        return revokedTokens.size() + revokedUsers.size();
+    }
+
+    private void purge() {
+        revocationsSincePurge.set(0);
+        final long now = System.currentTimeMillis();
+        revokedTokens.values().removeIf(expiresAt -> expiresAt <= now);
+        revokedUsers.values().removeIf(revokedAt -> revokedAt + TOKEN_LIFETIME_MILLIS <= now);
+    }
+
+    private static UUID toKey(final String tokenId) {
+        try {
+            return tokenId == null ? null : UUID.fromString(tokenId);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -5,74 +5,132 @@ import com.upgrad.quora.service.dao.UserDao;
 import com.upgrad.quora.service.entity.UserAuthEntity;
 import com.upgrad.quora.service.entity.UserEntity;
 import com.upgrad.quora.service.exception.AuthenticationFailedException;
+import com.upgrad.quora.service.exception.ServiceBusyException;
 import com.upgrad.quora.service.exception.SignOutRestrictedException;
 import com.upgrad.quora.service.exception.SignUpRestrictedException;
+import org.hibernate.exception.ConstraintViolationException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import javax.annotation.PostConstruct;
 import java.time.ZonedDateTime;
 import java.util.UUID;
 
 @Service
 public class UserAuthenticationService {
 
+    private static final String USERNAME_CONSTRAINT = "users_username_key";
+
+    private static final String EMAIL_CONSTRAINT = "users_email_key";
+
     @Autowired private UserDao userDao;
 
     @Autowired private UserAuthDao userAuthDao;
 
     @Autowired private PasswordCryptographyProvider passwordCryptographyProvider;
 
+    @Autowired private PasswordHashingPool passwordHashingPool;
+
+    @Autowired private AccessTokenCache accessTokenCache;
+
+    @Autowired private JwtTokenProvider jwtTokenProvider;
+
+    @Autowired private TokenDenylist tokenDenylist;
+
+    @Autowired private AccessTokenBloomFilter accessTokenBloomFilter;
+
+    @Autowired private UserMembershipIndex userMembershipIndex;
+
+
+    @Autowired private InvalidationBus invalidationBus;
+
+    @Autowired private PlatformTransactionManager transactionManager;
+
+    /**
+     * Runs the writes of signup and signin, which open their transaction only once the password is hashed, so that
+     * waiting for the hashing pool does not hold a database connection.
+     */
+    private TransactionTemplate transactionTemplate;
+
+    @PostConstruct
+    public void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
     /**
      * This service method assigns a UUID, sets an encrypted password and salt for the user signing up.
      * This method handle also exceptions in case of a duplicate username or if the user exists in the DB.
+     * Duplicates are detected by the UNIQUE constraints on the single INSERT, not by looking the user up first.
+     * The password is hashed before the transaction of the INSERT starts.
      *
      * @throws SignUpRestrictedException : Exception thrown if user/email already exists in the DB.
+     * @throws ServiceBusyException : If the password hashing pool is saturated.
      * @return UserEntity with user details
      */
-    @Transactional(propagation = Propagation.REQUIRED)
-    public UserEntity signup(UserEntity userEntity) throws SignUpRestrictedException {
-        if (userNameExists(userEntity.getUserName())) {
-            throw new SignUpRestrictedException(
-                    "SGR-001", "Try any other Username, this Username has already been taken");
-        }
-
-        if (emailExists(userEntity.getEmail())) {
-            throw new SignUpRestrictedException(
-                    "SGR-002", "This user has already been registered, try with any other emailId");
-        }
+    public UserEntity signup(UserEntity userEntity) throws SignUpRestrictedException, ServiceBusyException {
         userEntity.setUuid(UUID.randomUUID().toString());
 
         //Encrypt the password and set salt
-        String[] encryptedText = passwordCryptographyProvider.encrypt(userEntity.getPassword());
+        final String password = userEntity.getPassword();
+        String[] encryptedText = passwordHashingPool.execute(() -> passwordCryptographyProvider.encrypt(password));
         userEntity.setSalt(encryptedText[0]);
         userEntity.setPassword(encryptedText[1]);
-        return userDao.createUser(userEntity);
+        try {
+            return transactionTemplate.execute(status -> {
+                final UserEntity createdUser = userDao.createUser(userEntity);
+                userMembershipIndex.userCreated(createdUser.getUserName(), createdUser.getEmail());
+                invalidationBus.userCreated(createdUser);
+                return createdUser;
+            });
+        } catch (DataIntegrityViolationException e) {
+            throw toSignUpRestrictedException(e);
+        }
+    }
+
+    /**
+     * Checks whether a username and an email address are still free, using the in-memory membership index.
+     *
+     * @param userName : Username to check, may be null.
+     * @param email : Email to check, may be null.
+     * @return Boolean array with [0] username available [1] email available, null for a value not checked.
+     */
+    public Boolean[] checkAvailability(final String userName, final String email) {
+        return new Boolean[]{
+                userName == null ? null : !userMembershipIndex.isUserNameTaken(userName),
+                email == null ? null : !userMembershipIndex.isEmailTaken(email)
+        };
     }
 
     /**
      * Sign in method takes username and password as argument, create and sets an auth token and opens a session.
+     * Attempts are throttled by the caller with the SigninRateLimiter. The user is read without a transaction and
+     * the password hashed with no connection held, a transaction is only opened to insert the session.
      *
      * @param username : Username of the user
      * @param password : Password of the user
      * @throws AuthenticationFailedException : If the user is not found or password is invalid
+     * @throws ServiceBusyException : If the password hashing pool is saturated.
      * @return UserAuthEntity access token and response.
      */
-    @Transactional(propagation = Propagation.REQUIRED)
     public UserAuthEntity signin(final String username, final String password)
-            throws AuthenticationFailedException {
+            throws AuthenticationFailedException, ServiceBusyException {
 
         UserEntity userEntity = userDao.getUserByUserName(username);
         if (userEntity == null) {
             throw new AuthenticationFailedException("ATH-001", "This username does not exist");
         }
-        final String encryptedPassword = passwordCryptographyProvider.encrypt(password, userEntity.getSalt());
+        final String salt = userEntity.getSalt();
+        final String encryptedPassword =
+                passwordHashingPool.execute(() -> PasswordCryptographyProvider.encrypt(password, salt));
         if (!encryptedPassword.equals(userEntity.getPassword())) {
             throw new AuthenticationFailedException("ATH-002", "Password failed");
         }
 
-        JwtTokenProvider jwtTokenProvider = new JwtTokenProvider(encryptedPassword);
         UserAuthEntity userAuthEntity = new UserAuthEntity();
         userAuthEntity.setUuid(UUID.randomUUID().toString());
         userAuthEntity.setUserEntity(userEntity);
@@ -81,12 +139,18 @@ public class UserAuthenticationService {
         final ZonedDateTime now = ZonedDateTime.now();
         final ZonedDateTime expiresAt = now.plusHours(8);
         userAuthEntity.setAccessToken(
-                jwtTokenProvider.generateToken(userEntity.getUuid(), now, expiresAt));
+                jwtTokenProvider.generateToken(userAuthEntity.getUuid(), userEntity.getId(),
+                        userEntity.getUuid(), userEntity.getRole(), now, expiresAt));
         userAuthEntity.setLoginAt(now);
         userAuthEntity.setExpiresAt(expiresAt);
 
-        userAuthDao.createAuthToken(userAuthEntity);
-        userDao.updateUserEntity(userEntity);
+        transactionTemplate.execute(status -> {
+            userAuthDao.createAuthToken(userAuthEntity);
+            accessTokenCache.forgetNegative(userAuthEntity.getAccessToken());
+            accessTokenBloomFilter.add(userAuthEntity.getAccessToken());
+            userDao.updateUserEntity(userEntity);
+            return null;
+        });
 
         return userAuthEntity;
     }
@@ -106,26 +170,34 @@ public class UserAuthenticationService {
         }
         userAuthEntity.setLogoutAt(ZonedDateTime.now());
         userAuthDao.updateUserAuth(userAuthEntity);
+        accessTokenCache.invalidate(accessToken);
+        tokenDenylist.revoke(userAuthEntity.getUuid(), userAuthEntity.getExpiresAt());
+        invalidationBus.sessionRevoked(userAuthEntity);
         return userAuthEntity.getUserEntity();
     }
 
     /**
-     * Check if the Username already exists in the DB.
+     * Maps a violated UNIQUE constraint of the USERS table to the matching sign up error.
      *
-     * @param userName
-     * @return true/false
+     * @param e : Exception raised by the INSERT.
+     * @return SignUpRestrictedException with SGR-001 for the username and SGR-002 for the email.
      */
-    private boolean userNameExists(final String userName) {
-        return userDao.getUserByUserName(userName) != null;
-    }
-
-    /**
-     * Checks if the email already exists in the DB.
-     *
-     * @param email
-     * @return true/false
-     */
-    private boolean emailExists(final String email) {
-        return userDao.getUserByEmail(email) != null;
+    private SignUpRestrictedException toSignUpRestrictedException(final DataIntegrityViolationException e) {
+        String constraintName = "";
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConstraintViolationException) {
+                constraintName = String.valueOf(((ConstraintViolationException) cause).getConstraintName());
+                break;
+            }
+        }
+        if (constraintName.equalsIgnoreCase(USERNAME_CONSTRAINT)) {
+            return new SignUpRestrictedException(
+                    "SGR-001", "Try any other Username, this Username has already been taken");
+        }
+        if (constraintName.equalsIgnoreCase(EMAIL_CONSTRAINT)) {
+            return new SignUpRestrictedException(
+                    "SGR-002", "This user has already been registered, try with any other emailId");
+        }
+        throw e;
     }
 }
\ No newline at end of file
@@ -0,0 +1,104 @@
+package com.upgrad.quora.service.business;
+
+import com.upgrad.quora.service.common.TransactionCallbacks;
+import com.upgrad.quora.service.dao.UserDao;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory index of the lowercased usernames and email addresses in the USERS table, answering availability
+ * checks without a database round trip. It is loaded at startup and updated once user creations and deletions
+ * commit. The UNIQUE constraints on USERS stay the source of truth for signup.
+ */
+@Component
+public class UserMembershipIndex {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(UserMembershipIndex.class);
+
+    private static final int LOAD_BATCH_SIZE = 10000;
+
+    @Autowired private UserDao userDao;
+
+    /**
+     * Lowercased value to the number of users having it, USERS is unique only case sensitively.
+     */
+    private volatile Map<String, Integer> userNames = new ConcurrentHashMap<>();
+
+    private volatile Map<String, Integer> emails = new ConcurrentHashMap<>();
+
+    /**
+     * Loads the index into fresh maps and swaps them in, so lookups keep working during a reload.
+     */
+    @PostConstruct
+    public void load() {
+        final Map<String, Integer> loadedUserNames = new ConcurrentHashMap<>();
+        final Map<String, Integer> loadedEmails = new ConcurrentHashMap<>();
+        int lastId = 0;
+        List<Object[]> batch;
+        do {
+            batch = userDao.getUserNamesAndEmailsAfter(lastId, LOAD_BATCH_SIZE);
+            for (Object[] row : batch) {
+                lastId = (Integer) row[0];
+                add(loadedUserNames, (String) row[1]);
+                add(loadedEmails, (String) row[2]);
+            }
+        } while (batch.size() == LOAD_BATCH_SIZE);
+        userNames = loadedUserNames;
+        emails = loadedEmails;
+        LOGGER.info("User membership index loaded {} users", loadedUserNames.size());
+    }
+
+    public boolean isUserNameTaken(final String userName) {
+        return userNames.containsKey(normalize(userName));
+    }
+
+    public boolean isEmailTaken(final String email) {
+        return emails.containsKey(normalize(email));
+    }
+
+    /**
+     * Adds the user once the surrounding transaction commits.
+     *
+     * @param userName : username of the new user.
+     * @param email : email of the new user.
+     */
+    public void userCreated(final String userName, final String email) {
+        TransactionCallbacks.afterCommit(() -> {
+            add(userNames, userName);
+            add(emails, email);
+        });
+    }
+
+    /**
+     * Removes the user once the surrounding transaction commits.
+     *
+     * @param userName : username of the deleted user.
+     * @param email : email of the deleted user.
+     */
+    public void userDeleted(final String userName, final String email) {
+        TransactionCallbacks.afterCommit(() -> {
+            remove(userNames, userName);
+            remove(emails, email);
+        });
+    }
+
+    private static void add(final Map<String, Integer> index, final String value) {
+        index.merge(normalize(value), 1, Integer::sum);
+    }
+
+    private static void remove(final Map<String, Integer> index, final String value) {
+        index.computeIfPresent(normalize(value), (key, count) -> count > 1 ? count - 1 : null);
+    }
+
+    private static String normalize(final String value) {
+        return value.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,79 @@
+package com.upgrad.quora.service.common;
+
+import com.upgrad.quora.service.exception.InvalidPaginationException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Base64;
+
+/**
+ * Opaque page token of listings ordered by (date DESC, id DESC), holding the date and id of the last row returned.
+ * The next page starts right after that row, so fetching a page costs the same however deep into the listing it is.
+ * The id is kept as a long, so that it covers the bigint ids of answers as well as the int ids of questions.
+ */
+public final class KeysetPageToken {
+
+    private static final String VERSION = "1";
+
+    private final ZonedDateTime date;
+
+    private final long id;
+
+    public KeysetPageToken(final ZonedDateTime date, final long id) {
+        this.date = date;
+        this.id = id;
+    }
+
+    public ZonedDateTime getDate() {
+        return date;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * @return the id, for listings whose ids are ints.
+     * @throws InvalidPaginationException : If the id is out of the int range, no such listing issued the token.
+     */
+    public Integer getIntId() throws InvalidPaginationException {
+        if (id < Integer.MIN_VALUE || id > Integer.MAX_VALUE) {
+            throw new InvalidPaginationException("PAG-001", "Invalid page token");
+        }
+        return (int) id;
+    }
+
+    /**
+     * @return the token as an url safe string.
+     */
+    public String encode() {
+        final Instant instant = date.toInstant();
+        final String value = VERSION + ":" + instant.getEpochSecond() + ":" + instant.getNano() + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Parses a token created by encode.
+     *
+     * @param token : token sent by the client.
+     * @return KeysetPageToken
+     * @throws InvalidPaginationException : If the token was not created by encode.
+     */
+    public static KeysetPageToken decode(final String token) throws InvalidPaginationException {
+        try {
+            final String[] fields =
+                    new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8).split(":");
+            if (fields.length != 4 || !VERSION.equals(fields[0])) {
+                throw new InvalidPaginationException("PAG-001", "Invalid page token");
+            }
+            final Instant instant = Instant.ofEpochSecond(Long.parseLong(fields[1]), Long.parseLong(fields[2]));
+            return new KeysetPageToken(
+                    ZonedDateTime.ofInstant(instant, ZoneId.systemDefault()), Long.parseLong(fields[3]));
+        } catch (IllegalArgumentException | DateTimeException e) {
+            throw new InvalidPaginationException("PAG-001", "Invalid page token");
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.upgrad.quora.service.common;
+
+import java.util.List;
+
+/**
+ * One page of a keyset paginated listing.
+ *
+ * @param <T> type of the items.
+ */
+public final class Page<T> {
+
+    private final List<T> items;
+
+    private final String nextPageToken;
+
+    public Page(final List<T> items, final String nextPageToken) {
+        this.items = items;
+        this.nextPageToken = nextPageToken;
+    }
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    /**
+     * @return token to pass to get the following page, null on the last page.
+     */
+    public String getNextPageToken() {
+        return nextPageToken;
+    }
+}
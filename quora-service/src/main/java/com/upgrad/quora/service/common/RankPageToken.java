@@ -0,0 +1,64 @@
+package com.upgrad.quora.service.common;
+
+import com.upgrad.quora.service.exception.InvalidPaginationException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Opaque page token of search results ordered by (rank DESC, id DESC), holding the rank and id of the last hit
+ * returned. The rank is kept as its exact float bits so that the next page resumes at exactly that hit.
+ */
+public final class RankPageToken {
+
+    private static final String VERSION = "1";
+
+    private final float rank;
+
+    private final Integer id;
+
+    public RankPageToken(final float rank, final Integer id) {
+        this.rank = rank;
+        this.id = id;
+    }
+
+    public float getRank() {
+        return rank;
+    }
+
+    public Integer getId() {
+        return id;
+    }
+
+    /**
+     * @return the token as an url safe string.
+     */
+    public String encode() {
+        final String value = VERSION + ":" + Integer.toHexString(Float.floatToIntBits(rank)) + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Parses a token created by encode.
+     *
+     * @param token : token sent by the client.
+     * @return RankPageToken
+     * @throws InvalidPaginationException : If the token was not created by encode.
+     */
+    public static RankPageToken decode(final String token) throws InvalidPaginationException {
+        try {
+            final String[] fields =
+                    new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8).split(":");
+            if (fields.length != 3 || !VERSION.equals(fields[0])) {
+                throw new InvalidPaginationException("PAG-001", "Invalid page token");
+            }
+            final float rank = Float.intBitsToFloat(Integer.parseUnsignedInt(fields[1], 16));
+            if (Float.isNaN(rank)) {
+                throw new InvalidPaginationException("PAG-001", "Invalid page token");
+            }
+            return new RankPageToken(rank, Integer.valueOf(fields[2]));
+        } catch (IllegalArgumentException e) {
+            throw new InvalidPaginationException("PAG-001", "Invalid page token");
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.upgrad.quora.service.common;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Strong ETags of single questions and answers, made of their version column. The edit endpoints send them with
+ * every change and take them back in If-Match, so that an edit based on an outdated version is refused.
+ */
+public final class VersionTag {
+
+    private VersionTag() {
+    }
+
+    /**
+     * @param version : Version of the question or answer.
+     * @return strong ETag of the version.
+     */
+    public static String of(final int version) {
+        return "\"" + version + "\"";
+    }
+
+    /**
+     * Reads the versions an If-Match header accepts. Weak tags never match, as If-Match compares strongly.
+     *
+     * @param ifMatch : If-Match request header, may be null.
+     * @return accepted versions, possibly none, or null if any version is accepted.
+     */
+    public static List<Integer> parseIfMatch(final String ifMatch) {
+        if (ifMatch == null) {
+            return null;
+        }
+        final List<Integer> versions = new ArrayList<>();
+        for (String candidate : ifMatch.split(",")) {
+            final String tag = candidate.trim();
+            if (tag.equals("*")) {
+                return null;
+            }
+            if (tag.length() > 2 && tag.length() <= 12 && tag.startsWith("\"") && tag.endsWith("\"")) {
+                try {
+                    versions.add(Integer.valueOf(tag.substring(1, tag.length() - 1)));
+                } catch (NumberFormatException e) {
+                    // Not one of ours, it cannot match.
+                }
+            }
+        }
+        return versions;
+    }
+}
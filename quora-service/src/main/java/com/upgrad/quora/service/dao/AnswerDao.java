@@ -1,17 +1,38 @@
 package com.upgrad.quora.service.dao;
 
 import com.upgrad.quora.service.entity.AnswerEntity;
+import com.upgrad.quora.service.model.AnswerSummary;
 import org.springframework.stereotype.Repository;
 
 import javax.persistence.EntityManager;
 import javax.persistence.NoResultException;
 import javax.persistence.PersistenceContext;
 import javax.persistence.Query;
+import javax.persistence.TypedQuery;
+import java.time.ZonedDateTime;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 @Repository
 public class AnswerDao {
 
+  /**
+   * Edits the content of an answer of the user in one statement, %s takes the version condition of an If-Match.
+   * The question is joined for what the caches need to know about the edit.
+   */
+  private static final String EDIT_ANSWER =
+          "UPDATE ANSWER a SET ans = :ans, version = a.version + 1 FROM QUESTION q"
+                  + " WHERE a.uuid = :uuid AND a.user_id = :userId AND q.id = a.question_id%s"
+                  + " RETURNING a.id AS answer_id, a.version, q.id AS question_id, q.uuid AS question_uuid";
+
+  /**
+   * Deletes an answer in one statement, %s takes the owner condition unless an admin deletes it.
+   */
+  private static final String DELETE_ANSWER =
+          "DELETE FROM ANSWER a USING QUESTION q WHERE a.uuid = :uuid AND q.id = a.question_id%s"
+                  + " RETURNING a.id AS answer_id, q.id AS question_id, q.uuid AS question_uuid";
+
   @PersistenceContext
   private EntityManager entityManager;
 
@@ -27,29 +48,110 @@ public class AnswerDao {
   }
 
   /**
-   * Update an existing answer.
+   * Edit the content of an answer of the user with one conditional UPDATE, without loading the answer.
+   *
+   * @param uuid - uuid of the answer
+   * @param userId - id of the user who must own the answer
+   * @param ans - new content
+   * @param versions - versions the answer may have, null for any
+   * @return - id and new version of the answer, id and uuid of its question, or null if the answer does not
+   * exist, is not the user's or has none of the versions
+   */
+  public Object[] editAnswer(final String uuid, final Integer userId, final String ans, final List<Integer> versions){
+      final Query edit = entityManager.createNativeQuery(String.format(EDIT_ANSWER,
+              versions == null ? "" : " AND a.version IN (:versions)"));
+      if (versions != null) {
+          edit.setParameter("versions", versions);
+      }
+      final List<?> edited = edit.setParameter("uuid", uuid).setParameter("userId", userId)
+              .setParameter("ans", ans).getResultList();
+      return edited.isEmpty() ? null : (Object[]) edited.get(0);
+  }
+
+  /**
+   * Delete an answer with one DELETE, without loading the answer, its user or its question.
+   *
+   * @param uuid - uuid of the answer
+   * @param ownerId - id of the user who must own the answer, null to delete it whoever owns it
+   * @return - id of the answer, id and uuid of its question, or null if there is no such answer of the owner
+   */
+  public Object[] deleteAnswer(final String uuid, final Integer ownerId){
+      final Query delete = entityManager.createNativeQuery(String.format(DELETE_ANSWER,
+              ownerId == null ? "" : " AND a.user_id = :ownerId"));
+      if (ownerId != null) {
+          delete.setParameter("ownerId", ownerId);
+      }
+      final List<?> deleted = delete.setParameter("uuid", uuid).getResultList();
+      return deleted.isEmpty() ? null : (Object[]) deleted.get(0);
+  }
+
+  /**
+   * Fetch the owner and version of an answer, after an edit or delete did not match it.
    *
-   * @param answerEntity - answer that to be edited
-   * @return Updated Answer
+   * @param answerUuid - uuid of the answer
+   * @return - id of its user and version of the answer, or null if there is no such answer
    */
-  public AnswerEntity updateAnswer(final AnswerEntity answerEntity){
-      entityManager.merge(answerEntity);
-      return  answerEntity;
+  public Object[] getAnswerOwner(final String answerUuid){
+      final List<Object[]> rows = entityManager.createNamedQuery("answerOwnerByUuid", Object[].class)
+              .setParameter("uuid", answerUuid).getResultList();
+      return rows.isEmpty() ? null : rows.get(0);
   }
 
     /**
-     * Get the list of all answers for a question.
+     * Get a page of the answers of a question, newest first, with the question row joined once by its id.
+     * The ANSWER (question_id, date DESC, id DESC) index returns the rows in order and starts the scan of the
+     * following pages at the previous page's last row.
      *
-     * @param questionID - Question uuid for which neet to fetch all answers
-     * @return - List of Answers
+     * @param questionId - id of the question for which to fetch the answers
+     * @param afterDate - date of the last answer of the previous page, null for the first page
+     * @param afterId - id of the last answer of the previous page
+     * @param limit - maximum number of answers to return
+     * @return - answer summaries ordered by date and id, descending
      */
-  public List<AnswerEntity> getAllAnswer(String questionID){
-      Query query= entityManager.createNamedQuery("getAllAnswer",AnswerEntity.class).setParameter("id",questionID);
-      List <AnswerEntity>resultList = query.getResultList();
-      return resultList;
+  public List<AnswerSummary> getAnswersPage(final Integer questionId, final ZonedDateTime afterDate,
+                                            final Long afterId, final int limit){
+      TypedQuery<AnswerSummary> query;
+      if (afterDate == null) {
+          query = entityManager.createNamedQuery("answersByQuestionId", AnswerSummary.class);
+      } else {
+          query = entityManager.createNamedQuery("answersPageAfter", AnswerSummary.class)
+                  .setParameter("date", afterDate)
+                  .setParameter("id", afterId);
+      }
+      return query.setParameter("questionId", questionId).setMaxResults(limit).getResultList();
   }
 
 
+    /**
+     * Get the id, owner id, question id, uuid and content of the answers after the given id, in id order,
+     * to build a search index.
+     *
+     * @param afterId - id of the last answer of the previous batch, 0 for the first batch
+     * @param limit - maximum number of answers to return
+     * @return rows of id, user id, question id, uuid and content
+     */
+  public List<Object[]> getAnswerContentsAfter(final long afterId, final int limit){
+      return entityManager.createNamedQuery("answerContentsAfterId", Object[].class)
+              .setParameter("id", afterId)
+              .setMaxResults(limit)
+              .getResultList();
+  }
+
+    /**
+     * Count the answers of a user per question, before they go with the user's ON DELETE CASCADE.
+     *
+     * @param userId - id of the user
+     * @return - number of answers of the user by question id
+     */
+  public Map<Integer, Long> getAnswerCountsByUser(final Integer userId){
+      Map<Integer, Long> counts = new HashMap<>();
+      for (Object[] row : entityManager.createNamedQuery("answerCountsByUser", Object[].class)
+              .setParameter("userId", userId).getResultList()) {
+          counts.put((Integer) row[0], (Long) row[1]);
+      }
+      return counts;
+  }
+
     /**
      * Fetch an answer by its ID.
      *
@@ -65,13 +167,4 @@ public class AnswerDao {
       }
   }
 
-    /**
-     * Delete an answer by its id.
-     *
-     * @param answerEntity - Answer Entity that to be deleted
-     */
-  public void deleteAnswer(AnswerEntity answerEntity){
-      entityManager.remove(answerEntity);
-  }
-
 }
@@ -0,0 +1,27 @@
+package com.upgrad.quora.service.dao;
+
+import org.springframework.stereotype.Repository;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+@Repository
+public class NotificationDao {
+
+    @PersistenceContext private EntityManager entityManager;
+
+    /**
+     * Sends a NOTIFY on the channel as part of the current transaction, Postgres delivers it only on commit.
+     *
+     * @param channel : Channel the listeners are subscribed to.
+     * @param payload : Payload of the notification.
+     */
+    public void notify(final String channel, final String payload) {
+        // pg_notify returns void, which Hibernate cannot map, so count the single row instead.
+        entityManager
+                .createNativeQuery("SELECT count(*) FROM (SELECT pg_notify(:channel, :payload)) AS n")
+                .setParameter("channel", channel)
+                .setParameter("payload", payload)
+                .getSingleResult();
+    }
+}
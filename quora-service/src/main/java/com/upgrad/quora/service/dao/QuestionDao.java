@@ -2,15 +2,65 @@ package com.upgrad.quora.service.dao;
 
 
 import com.upgrad.quora.service.entity.QuestionEntity;
+import com.upgrad.quora.service.model.QuestionSearchHit;
+import com.upgrad.quora.service.model.QuestionSnapshot;
+import com.upgrad.quora.service.model.QuestionSummary;
+import org.hibernate.Session;
 import org.springframework.stereotype.Repository;
 
 import javax.persistence.EntityManager;
 import javax.persistence.NoResultException;
 import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
+import javax.persistence.TypedQuery;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 @Repository
 public class QuestionDao {
+    /**
+     * Matches go through the GIN index on the generated content_tsv column, only the matches are ranked.
+     */
+    private static final String SEARCH_QUESTIONS =
+            "SELECT id, uuid, content, rank FROM (SELECT q.id, q.uuid, q.content, ts_rank(q.content_tsv, tsq) AS rank"
+                    + " FROM QUESTION q, websearch_to_tsquery('english', :query) tsq WHERE q.content_tsv @@ tsq) hits";
+
+    /**
+     * Goes through the USERS uuid index and the QUESTION (user_id, date DESC, id DESC) index, %s takes the
+     * keyset condition of the following pages.
+     */
+    private static final String QUESTIONS_BY_USER =
+            "SELECT u.id AS user_id, q.id, q.uuid, q.content, q.date, q.answer_count FROM USERS u"
+                    + " LEFT JOIN QUESTION q ON q.user_id = u.id%s WHERE u.uuid = :userUuid ORDER BY q.date DESC, q.id DESC";
+
+    /**
+     * Edits the content in one statement, %s takes the version condition of an If-Match.
+     */
+    private static final String EDIT_QUESTION =
+            "UPDATE QUESTION SET content = :content, version = version + 1 WHERE id = :id%s RETURNING version";
+
+    /**
+     * Deletes the question in one statement, %s takes the owner condition unless an admin deletes it.
+     * Its answers go with the ON DELETE CASCADE.
+     */
+    private static final String DELETE_QUESTION = "DELETE FROM QUESTION WHERE uuid = :uuid%s RETURNING id";
+
+    private static final String ADD_ANSWER_COUNT = "UPDATE QUESTION SET answer_count = answer_count + ? WHERE id = ?";
+
+    /**
+     * Recounts the answers of a range of question ids through the ANSWER (question_id, date DESC, id DESC) index and only writes the
+     * rows whose count is off.
+     */
+    private static final String RECONCILE_ANSWER_COUNTS =
+            "UPDATE QUESTION q SET answer_count = c.answers FROM (SELECT r.id, count(a.id) AS answers FROM QUESTION r"
+                    + " LEFT JOIN ANSWER a ON a.question_id = r.id WHERE r.id > :afterId AND r.id <= :lastId GROUP BY r.id) c"
+                    + " WHERE q.id = c.id AND q.answer_count <> c.answers";
+
     @PersistenceContext
     private EntityManager entityManager;
 
@@ -26,17 +76,80 @@ public class QuestionDao {
     }
 
     /**
-     * Get a list of all questions from the DB
-     * @return returns List of all questions in the database
-     * if no questions present in db returns null
+     * Create new questions, the inserts are sent in JDBC batches when the persistence context is flushed.
+     *
+     * @param questionEntities questions to be persisted
+     * @return persisted questions
      */
-    public List<QuestionEntity> getAllQuestions(){
-        try{
-            return entityManager.createNamedQuery("getAllQuestions",QuestionEntity.class).getResultList();
+    public List<QuestionEntity> createQuestions(final List<QuestionEntity> questionEntities){
+        for (QuestionEntity questionEntity : questionEntities) {
+            entityManager.persist(questionEntity);
         }
-        catch (NoResultException nre){
-            return null;
+        entityManager.flush();
+        return questionEntities;
+    }
+
+    /**
+     * Get a page of question summaries, newest first.
+     * The date <= :date condition lets the (date DESC, id DESC) index start the scan at the previous page's last row.
+     *
+     * @param afterDate - date of the last question of the previous page, null for the first page
+     * @param afterId - id of the last question of the previous page
+     * @param limit - maximum number of questions to return
+     * @return questions ordered by date and id, descending
+     */
+    public List<QuestionSummary> getQuestionsPage(final ZonedDateTime afterDate, final Integer afterId, final int limit){
+        TypedQuery<QuestionSummary> query;
+        if (afterDate == null) {
+            query = entityManager.createNamedQuery("questionsFirstPage", QuestionSummary.class);
+        } else {
+            query = entityManager.createNamedQuery("questionsPageAfter", QuestionSummary.class)
+                    .setParameter("date", afterDate)
+                    .setParameter("id", afterId);
         }
+        return query.setMaxResults(limit).getResultList();
+    }
+
+    /**
+     * Full-text search over the question content, most relevant first.
+     *
+     * @param query - search text in web search syntax: words, "quoted phrases", or, -excluded
+     * @param afterRank - rank of the last hit of the previous page, null for the first page
+     * @param afterId - id of the last hit of the previous page
+     * @param limit - maximum number of hits to return
+     * @return hits ordered by rank and id, descending
+     */
+    public List<QuestionSearchHit> searchQuestions(final String query, final Float afterRank, final Integer afterId, final int limit){
+        Query search;
+        if (afterRank == null) {
+            search = entityManager.createNativeQuery(SEARCH_QUESTIONS + " ORDER BY rank DESC, id DESC");
+        } else {
+            search = entityManager.createNativeQuery(SEARCH_QUESTIONS
+                    + " WHERE rank < :rank OR (rank = :rank AND id < :id) ORDER BY rank DESC, id DESC")
+                    .setParameter("rank", afterRank)
+                    .setParameter("id", afterId);
+        }
+        List<Object[]> rows = search.setParameter("query", query).setMaxResults(limit).getResultList();
+        List<QuestionSearchHit> hits = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            hits.add(new QuestionSearchHit(((Number) row[0]).intValue(), (String) row[1], (String) row[2],
+                    ((Number) row[3]).floatValue()));
+        }
+        return hits;
+    }
+
+    /**
+     * Get the id, owner id, uuid and content of the questions after the given id, in id order, to build a search index.
+     *
+     * @param afterId - id of the last question of the previous batch, 0 for the first batch
+     * @param limit - maximum number of questions to return
+     * @return rows of id, user id, uuid and content
+     */
+    public List<Object[]> getQuestionContentsAfter(final int afterId, final int limit){
+        return entityManager.createNamedQuery("questionContentsAfterId", Object[].class)
+                .setParameter("id", afterId)
+                .setMaxResults(limit)
+                .getResultList();
     }
 
     /**
@@ -56,37 +169,176 @@ public class QuestionDao {
     }
 
     /**
-     * Update a question.
+     * Fetch an immutable copy of the question by uuid, for the question cache.
+     *
+     * @param uuid - uuid of the question to be fetched
+     * @return - snapshot of the question, or null if there is no question with the uuid
+     */
+    public QuestionSnapshot getQuestionSnapshotByUuid(final String uuid){
+        try {
+            return entityManager.createNamedQuery("questionSnapshotByUuid", QuestionSnapshot.class).setParameter("uuid", uuid).getSingleResult();
+        }
+        catch (NoResultException nre){
+            return null;
+        }
+    }
+
+    /**
+     * Fetch the newest questions, through the QUESTION (date DESC, id DESC) index.
      *
-     * @param questionEntity - questionEntity with edited content
-     * @return updated questionEntity
+     * @param limit - maximum number of questions to fetch
+     * @return - snapshots of the newest questions, newest first
      */
-    public QuestionEntity updateQuestion(QuestionEntity questionEntity){
-        return entityManager.merge(questionEntity);
+    public List<QuestionSnapshot> getLatestQuestions(final int limit){
+        return entityManager.createNamedQuery("latestQuestionSnapshots", QuestionSnapshot.class)
+                .setMaxResults(limit)
+                .getResultList();
     }
 
+    /**
+     * Get a reference to a question known to exist, to set associations without loading the row.
+     *
+     * @param id - id of the question
+     * @return - uninitialized proxy of the question
+     */
+    public QuestionEntity getQuestionReference(final Integer id){
+        return entityManager.getReference(QuestionEntity.class, id);
+    }
 
     /**
-     * Fetch all questions by the given user.
+     * Edit the content of a question with one conditional UPDATE, without loading the question.
      *
-     * @param userId - user's unique id
-     * @return all questions based on user id and return null if no question for the user
+     * @param id - id of the question
+     * @param content - new content
+     * @param versions - versions the question may have, null for any
+     * @return - new version, or null if the question does not exist or has none of the versions
      */
-    public List<QuestionEntity> getAllQuestionsByUser(final Integer userId){
-        try {
-            return entityManager.createNamedQuery("questionByUserId", QuestionEntity.class).setParameter("userId", userId).getResultList();
-        } catch (NoResultException nre) {
+    public Integer editQuestion(final Integer id, final String content, final List<Integer> versions){
+        final Query edit = entityManager.createNativeQuery(String.format(EDIT_QUESTION,
+                versions == null ? "" : " AND version IN (:versions)"));
+        if (versions != null) {
+            edit.setParameter("versions", versions);
+        }
+        final List<?> edited = edit.setParameter("id", id).setParameter("content", content).getResultList();
+        return edited.isEmpty() ? null : ((Number) edited.get(0)).intValue();
+    }
+
+    /**
+     * Fetch the current version of a question, after an edit did not match it.
+     *
+     * @param id - id of the question
+     * @return - version of the question, or null if the question does not exist
+     */
+    public Integer getQuestionVersion(final Integer id){
+        final List<Integer> versions = entityManager.createNamedQuery("questionVersionById", Integer.class)
+                .setParameter("id", id).getResultList();
+        return versions.isEmpty() ? null : versions.get(0);
+    }
+
+
+    /**
+     * Get a page of the questions of a user, newest first, together with the existence of the user.
+     * USERS is left joined to QUESTION, so a user without questions (on this page) still yields one row of nulls
+     * and a missing user yields no row at all.
+     *
+     * @param userUuid - uuid of the user
+     * @param afterDate - date of the last question of the previous page, null for the first page
+     * @param afterId - id of the last question of the previous page
+     * @param limit - maximum number of questions to return
+     * @return questions ordered by date and id, descending, or null if there is no user with the uuid
+     */
+    public List<QuestionSummary> getQuestionsPageByUser(final String userUuid, final ZonedDateTime afterDate,
+                                                        final Integer afterId, final int limit){
+        Query query;
+        if (afterDate == null) {
+            query = entityManager.createNativeQuery(String.format(QUESTIONS_BY_USER, ""));
+        } else {
+            query = entityManager.createNativeQuery(String.format(QUESTIONS_BY_USER,
+                    " AND q.date <= :date AND (q.date < :date OR q.id < :id)"))
+                    .setParameter("date", afterDate)
+                    .setParameter("id", afterId);
+        }
+        List<Object[]> rows = query.setParameter("userUuid", userUuid).setMaxResults(limit).getResultList();
+        if (rows.isEmpty()) {
             return null;
         }
+        List<QuestionSummary> questions = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            if (row[1] != null) {
+                questions.add(new QuestionSummary(((Number) row[1]).intValue(), (String) row[2], (String) row[3],
+                        ((Timestamp) row[4]).toLocalDateTime().atZone(ZoneId.systemDefault()),
+                        ((Number) row[5]).intValue()));
+            }
+        }
+        return questions;
+    }
+
+    /**
+     * Add the deltas to the answer counts of the questions, sent as one JDBC batch of UPDATEs.
+     * Questions deleted meanwhile are skipped by their UPDATE matching no row.
+     *
+     * @param deltas - change of the answer count by question id, in the order the rows are to be locked
+     */
+    public void addAnswerCounts(final Map<Integer, Long> deltas){
+        entityManager.unwrap(Session.class).doWork(connection -> {
+            try (PreparedStatement update = connection.prepareStatement(ADD_ANSWER_COUNT)) {
+                for (Map.Entry<Integer, Long> delta : deltas.entrySet()) {
+                    update.setLong(1, delta.getValue());
+                    update.setInt(2, delta.getKey());
+                    update.addBatch();
+                }
+                update.executeBatch();
+            }
+        });
+    }
+
+    /**
+     * Set the answer count of the questions in the id range to the number of their answers.
+     *
+     * @param afterId - questions with a larger id are recounted
+     * @param lastId - questions up to this id are recounted
+     * @return number of questions whose count was corrected
+     */
+    public int reconcileAnswerCounts(final int afterId, final int lastId){
+        return entityManager.createNativeQuery(RECONCILE_ANSWER_COUNTS)
+                .setParameter("afterId", afterId)
+                .setParameter("lastId", lastId)
+                .executeUpdate();
+    }
+
+    /**
+     * @return - largest question id, 0 when there is no question
+     */
+    public int getMaxQuestionId(){
+        return entityManager.createNamedQuery("maxQuestionId", Integer.class).getSingleResult();
+    }
+
+    /**
+     * Delete a question with one DELETE, without loading the question or its answers.
+     *
+     * @param uuid - uuid of the question
+     * @param ownerId - id of the user who must own the question, null to delete it whoever owns it
+     * @return - id of the deleted question, or null if there is no such question of the owner
+     */
+    public Integer deleteQuestion(final String uuid, final Integer ownerId){
+        final Query delete = entityManager.createNativeQuery(String.format(DELETE_QUESTION,
+                ownerId == null ? "" : " AND user_id = :ownerId"));
+        if (ownerId != null) {
+            delete.setParameter("ownerId", ownerId);
+        }
+        final List<?> deleted = delete.setParameter("uuid", uuid).getResultList();
+        return deleted.isEmpty() ? null : ((Number) deleted.get(0)).intValue();
     }
 
     /**
-     * Delete a question.
+     * Tell whether a question exists, after a delete did not match it.
      *
-     * @param questionEntity which needs to be deleted
+     * @param uuid - uuid of the question
+     * @return - true if there is a question with the uuid
      */
-    public void deleteQuestion(final QuestionEntity questionEntity){
-        entityManager.remove(questionEntity);
+    public boolean questionExists(final String uuid){
+        return !entityManager.createNamedQuery("questionIdByUuid", Integer.class)
+                .setParameter("uuid", uuid).setMaxResults(1).getResultList().isEmpty();
     }
 
 
@@ -6,6 +6,9 @@ import org.springframework.stereotype.Repository;
 import javax.persistence.EntityManager;
 import javax.persistence.NoResultException;
 import javax.persistence.PersistenceContext;
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
+import java.util.List;
 
 @Repository
 public class UserAuthDao {
@@ -27,6 +30,40 @@ public class UserAuthDao {
             return null;
         }
     }
+    /**
+     * Fetches the sessions which were signed out but whose access token has not expired yet.
+     *
+     * @param now : Current time.
+     * @return List of [uuid, expiresAt] pairs.
+     */
+    public List<Object[]> getRevokedSessions(final ZonedDateTime now) {
+        return entityManager
+                .createNamedQuery("revokedUserAuths", Object[].class)
+                .setParameter("now", now)
+                .getResultList();
+    }
+    /**
+     * Fetches the next batch of access tokens, ordered by id.
+     *
+     * @param afterId : Only rows with a greater id are returned.
+     * @param limit : Maximum number of rows.
+     * @return List of [id, accessToken] pairs.
+     */
+    public List<Object[]> getAccessTokensAfter(final long afterId, final int limit) {
+        return entityManager
+                .createNamedQuery("userAuthTokensAfterId", Object[].class)
+                .setParameter("id", afterId)
+                .setMaxResults(limit)
+                .getResultList();
+    }
+    /**
+     * Counts the rows in USER_AUTH.
+     *
+     * @return Number of sessions.
+     */
+    public long getAccessTokenCount() {
+        return entityManager.createNamedQuery("userAuthCount", Long.class).getSingleResult();
+    }
     /**
      * Persists userAuthEntity in DB.
      *
@@ -45,4 +82,72 @@ public class UserAuthDao {
     public void updateUserAuth(final UserAuthEntity updatedUserAuthEntity) {
         entityManager.merge(updatedUserAuthEntity);
     }
+    /**
+     * Deletes one batch of sessions which expired, or were signed out, before the given times.
+     *
+     * @param expiredBefore : Sessions expiring before this are deleted.
+     * @param loggedOutBefore : Sessions signed out before this are deleted.
+     * @param batchSize : Maximum number of rows deleted.
+     * @return Number of rows deleted.
+     */
+    public int deleteExpiredSessions(
+            final ZonedDateTime expiredBefore, final ZonedDateTime loggedOutBefore, final int batchSize) {
+        return entityManager
+                .createNativeQuery(
+                        "DELETE FROM USER_AUTH WHERE (ID, LOGIN_AT) IN (SELECT ID, LOGIN_AT FROM USER_AUTH"
+                                + " WHERE EXPIRES_AT < :expiredBefore OR LOGOUT_AT < :loggedOutBefore LIMIT :batchSize)")
+                .setParameter("expiredBefore", expiredBefore)
+                .setParameter("loggedOutBefore", loggedOutBefore)
+                .setParameter("batchSize", batchSize)
+                .executeUpdate();
+    }
+    /**
+     * Lists the partitions of USER_AUTH.
+     *
+     * @return Partition table names.
+     */
+    @SuppressWarnings("unchecked")
+    public List<String> getSessionPartitions() {
+        return entityManager
+                .createNativeQuery(
+                        "SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid"
+                                + " JOIN pg_class p ON p.oid = i.inhparent WHERE p.relname = 'user_auth'")
+                .getResultList();
+    }
+    /**
+     * Creates a USER_AUTH partition for logins in [from, to), must be called inside a transaction.
+     * Postgres refuses a partition for logins which the default partition already holds, so the table is created
+     * detached, those rows are moved into it and it is attached afterwards. The default partition stays locked
+     * until the transaction ends, so no login of the range lands in it meanwhile.
+     *
+     * @param name : Partition table name, generated by the caller.
+     * @param from : First day of the partition.
+     * @param to : First day after the partition.
+     * @return Number of rows moved out of the default partition.
+     */
+    public int createSessionPartition(final String name, final LocalDate from, final LocalDate to) {
+        entityManager.createNativeQuery("LOCK TABLE USER_AUTH_DEFAULT IN SHARE ROW EXCLUSIVE MODE").executeUpdate();
+        entityManager
+                .createNativeQuery("CREATE TABLE " + name + " (LIKE USER_AUTH INCLUDING DEFAULTS INCLUDING CONSTRAINTS)")
+                .executeUpdate();
+        final int moved = entityManager
+                .createNativeQuery(
+                        "WITH moved AS (DELETE FROM USER_AUTH_DEFAULT WHERE LOGIN_AT >= '" + from + "' AND LOGIN_AT < '"
+                                + to + "' RETURNING *) INSERT INTO " + name + " SELECT * FROM moved")
+                .executeUpdate();
+        entityManager
+                .createNativeQuery(
+                        "ALTER TABLE USER_AUTH ATTACH PARTITION " + name + " FOR VALUES FROM ('" + from + "') TO ('"
+                                + to + "')")
+                .executeUpdate();
+        return moved;
+    }
+    /**
+     * Drops a USER_AUTH partition together with its rows.
+     *
+     * @param name : Partition table name, generated by the caller.
+     */
+    public void dropSessionPartition(final String name) {
+        entityManager.createNativeQuery("DROP TABLE IF EXISTS " + name).executeUpdate();
+    }
 }
\ No newline at end of file
@@ -6,6 +6,7 @@ import org.springframework.stereotype.Repository;
 import javax.persistence.EntityManager;
 import javax.persistence.NoResultException;
 import javax.persistence.PersistenceContext;
+import java.util.List;
 
 @Repository
 public class UserDao {
@@ -29,12 +30,15 @@ public class UserDao {
     }
     /**
      * Create a user in the DB.
+     * The INSERT is flushed right away so that a duplicate username or email surfaces here as a violation of
+     * the USERS_USERNAME_KEY or USERS_EMAIL_KEY constraint.
      *
      * @param userEntity : The user entity received from Service method.
      * @return User details
      */
     public UserEntity createUser(UserEntity userEntity) {
         entityManager.persist(userEntity);
+        entityManager.flush();
         return userEntity;
     }
 
@@ -71,6 +75,21 @@ public class UserDao {
         }
     }
 
+    /**
+     * Get the next batch of usernames and emails, ordered by user id.
+     *
+     * @param afterId : Only users with a greater id are returned.
+     * @param limit : Maximum number of users.
+     * @return List of [id, userName, email]
+     */
+    public List<Object[]> getUserNamesAndEmailsAfter(final int afterId, final int limit) {
+        return entityManager
+                .createNamedQuery("userNamesAndEmailsAfterId", Object[].class)
+                .setParameter("id", afterId)
+                .setMaxResults(limit)
+                .getResultList();
+    }
+
     /**
      * Method to update a user in the DB
      *
@@ -7,12 +7,17 @@ import java.time.ZonedDateTime;
 @Entity
 @Table(name = "answer")
 @NamedQueries({@NamedQuery(name="answerById" , query="select a from AnswerEntity a where a.uuid = :id"),
-        @NamedQuery(name="getAllAnswer", query = "select a from AnswerEntity a where a.question.uuid=:id")})
+        @NamedQuery(name="answersByQuestionId", query = "select new com.upgrad.quora.service.model.AnswerSummary(a.id, a.uuid, a.ans, a.date, q.content) from AnswerEntity a join a.question q where q.id=:questionId order by a.date desc, a.id desc"),
+        @NamedQuery(name="answersPageAfter", query = "select new com.upgrad.quora.service.model.AnswerSummary(a.id, a.uuid, a.ans, a.date, q.content) from AnswerEntity a join a.question q where q.id=:questionId and a.date <= :date and (a.date < :date or a.id < :id) order by a.date desc, a.id desc"),
+        @NamedQuery(name="answerContentsAfterId", query = "select a.id, a.userEntity.id, a.question.id, a.uuid, a.ans from AnswerEntity a where a.id > :id order by a.id"),
+        @NamedQuery(name="answerOwnerByUuid", query = "select a.userEntity.id, a.version from AnswerEntity a where a.uuid = :uuid"),
+        @NamedQuery(name="answerCountsByUser", query = "select a.question.id, count(a) from AnswerEntity a where a.userEntity.id = :userId group by a.question.id")})
 public class AnswerEntity {
 
   @Id
   @Column(name = "id")
-  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "answer_id_seq")
+  @SequenceGenerator(name = "answer_id_seq", sequenceName = "answer_id_seq", allocationSize = 50)
   private long id;
 
   @Column(name = "uuid")
@@ -26,14 +31,18 @@ public class AnswerEntity {
   @Column(name = "date")
   private ZonedDateTime date;
 
-  @ManyToOne
+  @ManyToOne(fetch = FetchType.LAZY)
   @JoinColumn(name = "user_id")
   private UserEntity userEntity;
 
-  @ManyToOne
+  @ManyToOne(fetch = FetchType.LAZY)
   @JoinColumn(name = "question_id")
   private QuestionEntity question;
 
+  @Version
+  @Column(name = "version")
+  private Integer version;
+
   public long getId() {
     return id;
   }
@@ -42,6 +51,10 @@ public class AnswerEntity {
     this.id = id;
   }
 
+  public Integer getVersion() {
+    return version;
+  }
+
   public String getUuid() {
     return uuid;
   }
@@ -8,13 +8,20 @@ import java.time.ZonedDateTime;
 
 @Entity
 @Table(name = "question")
-@NamedQuery(name = "getAllQuestions",query = "SELECT q FROM QuestionEntity q")
+@NamedQuery(name = "questionsFirstPage",query = "SELECT NEW com.upgrad.quora.service.model.QuestionSummary(q.id, q.uuid, q.content, q.date, q.answerCount) FROM QuestionEntity q ORDER BY q.date DESC, q.id DESC")
+@NamedQuery(name = "questionsPageAfter",query = "SELECT NEW com.upgrad.quora.service.model.QuestionSummary(q.id, q.uuid, q.content, q.date, q.answerCount) FROM QuestionEntity q WHERE q.date <= :date AND (q.date < :date OR q.id < :id) ORDER BY q.date DESC, q.id DESC")
 @NamedQuery(name = "getQuestionByUuid",query = "SELECT q FROM QuestionEntity q WHERE q.uuid =:uuid")
-@NamedQuery(name = "questionByUserId",query = "SELECT q FROM QuestionEntity q WHERE q.userEntity.id =:userId")
+@NamedQuery(name = "questionSnapshotByUuid",query = "SELECT NEW com.upgrad.quora.service.model.QuestionSnapshot(q.id, q.uuid, q.content, q.date, q.userEntity.id) FROM QuestionEntity q WHERE q.uuid =:uuid")
+@NamedQuery(name = "latestQuestionSnapshots",query = "SELECT NEW com.upgrad.quora.service.model.QuestionSnapshot(q.id, q.uuid, q.content, q.date, q.userEntity.id) FROM QuestionEntity q ORDER BY q.date DESC, q.id DESC")
+@NamedQuery(name = "questionIdByUuid",query = "SELECT q.id FROM QuestionEntity q WHERE q.uuid = :uuid")
+@NamedQuery(name = "questionVersionById",query = "SELECT q.version FROM QuestionEntity q WHERE q.id = :id")
+@NamedQuery(name = "maxQuestionId",query = "SELECT coalesce(max(q.id), 0) FROM QuestionEntity q")
+@NamedQuery(name = "questionContentsAfterId",query = "SELECT q.id, q.userEntity.id, q.uuid, q.content FROM QuestionEntity q WHERE q.id > :id ORDER BY q.id")
 public class QuestionEntity {
     @Id
     @Column(name = "id")
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "question_id_seq")
+    @SequenceGenerator(name = "question_id_seq", sequenceName = "question_id_seq", allocationSize = 50)
     private Integer id;
 
     @Column(name = "uuid")
@@ -31,10 +38,20 @@ public class QuestionEntity {
     @NotNull
     private ZonedDateTime date;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id")
     private UserEntity userEntity;
 
+    @Version
+    @Column(name = "version")
+    private Integer version;
+
+    /**
+     * Kept by AnswerCounts with additive updates, so it is never written by an insert or a merge.
+     */
+    @Column(name = "answer_count", insertable = false, updatable = false)
+    private Integer answerCount;
+
     public Integer getId() {
         return id;
     }
@@ -74,4 +91,12 @@ public class QuestionEntity {
     public void setUserEntity(UserEntity userEntity) {
         this.userEntity = userEntity;
     }
+
+    public Integer getVersion() {
+        return version;
+    }
+
+    public Integer getAnswerCount() {
+        return answerCount;
+    }
 }
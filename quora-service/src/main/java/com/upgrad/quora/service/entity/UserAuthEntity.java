@@ -17,14 +17,21 @@ import java.time.ZonedDateTime;
 @NamedQueries({
         @NamedQuery(
                 name = "userAuthByAccessToken",
-                query = "select u from UserAuthEntity u where u.accessToken=:accessToken")
+                query = "select u from UserAuthEntity u where u.accessToken=:accessToken"),
+        @NamedQuery(
+                name = "userAuthTokensAfterId",
+                query = "select u.id, u.accessToken from UserAuthEntity u where u.id>:id order by u.id"),
+        @NamedQuery(name = "userAuthCount", query = "select count(u) from UserAuthEntity u"),
+        @NamedQuery(
+                name = "revokedUserAuths",
+                query = "select u.uuid, u.expiresAt from UserAuthEntity u where u.logoutAt is not null and u.expiresAt>:now")
 })
 public class UserAuthEntity {
 
     @Id
     @Column(name = "id")
     @GeneratedValue(strategy = GenerationType.IDENTITY)
-    private Integer id;
+    private Long id;
 
     @Column(name = "uuid")
     @NotNull
@@ -52,11 +59,11 @@ public class UserAuthEntity {
     @Column(name = "logout_at")
     private ZonedDateTime logoutAt;
 
-    public Integer getId() {
+    public Long getId() {
         return id;
     }
 
-    public void setId(Integer id) {
+    public void setId(Long id) {
         this.id = id;
     }
 
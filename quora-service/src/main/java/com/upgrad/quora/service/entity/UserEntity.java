@@ -17,7 +17,10 @@ import java.io.Serializable;
                 name = "userByUserName",
                 query = "select u from UserEntity u where u.userName=:userName"),
         @NamedQuery(name = "userByEmail", query = "select u from UserEntity u where u.email=:email"),
-        @NamedQuery(name = "userByUserId", query = "select u from UserEntity u where u.uuid=:userId")
+        @NamedQuery(name = "userByUserId", query = "select u from UserEntity u where u.uuid=:userId"),
+        @NamedQuery(
+                name = "userNamesAndEmailsAfterId",
+                query = "select u.id, u.userName, u.email from UserEntity u where u.id>:id order by u.id")
 })
 public class UserEntity implements Serializable {
 
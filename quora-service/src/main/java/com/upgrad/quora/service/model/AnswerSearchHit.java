@@ -0,0 +1,46 @@
+package com.upgrad.quora.service.model;
+
+/**
+ * Read model of an answer matching a search, with the content of its question and its relevance to the search.
+ */
+public class AnswerSearchHit {
+
+    private final Integer id;
+
+    private final String uuid;
+
+    private final String ans;
+
+    private final String questionContent;
+
+    private final float rank;
+
+    public AnswerSearchHit(final Integer id, final String uuid, final String ans, final String questionContent,
+                           final float rank) {
+        this.id = id;
+        this.uuid = uuid;
+        this.ans = ans;
+        this.questionContent = questionContent;
+        this.rank = rank;
+    }
+
+    public Integer getId() {
+        return id;
+    }
+
+    public String getUuid() {
+        return uuid;
+    }
+
+    public String getAns() {
+        return ans;
+    }
+
+    public String getQuestionContent() {
+        return questionContent;
+    }
+
+    public float getRank() {
+        return rank;
+    }
+}
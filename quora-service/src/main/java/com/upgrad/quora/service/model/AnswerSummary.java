@@ -0,0 +1,48 @@
+package com.upgrad.quora.service.model;
+
+import java.time.ZonedDateTime;
+
+/**
+ * Read model of an answer for list endpoints, carrying the content of its question from the same query.
+ */
+public class AnswerSummary {
+
+    private final long id;
+
+    private final String uuid;
+
+    private final String ans;
+
+    private final ZonedDateTime date;
+
+    private final String questionContent;
+
+    public AnswerSummary(final long id, final String uuid, final String ans, final ZonedDateTime date,
+                         final String questionContent) {
+        this.id = id;
+        this.uuid = uuid;
+        this.ans = ans;
+        this.date = date;
+        this.questionContent = questionContent;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getUuid() {
+        return uuid;
+    }
+
+    public String getAns() {
+        return ans;
+    }
+
+    public ZonedDateTime getDate() {
+        return date;
+    }
+
+    public String getQuestionContent() {
+        return questionContent;
+    }
+}
@@ -0,0 +1,41 @@
+package com.upgrad.quora.service.model;
+
+/**
+ * Existing question whose content is nearly the same as the content of a new question.
+ */
+public class DuplicateQuestion {
+
+    private final Integer id;
+
+    private final String uuid;
+
+    private final String content;
+
+    private final int distance;
+
+    public DuplicateQuestion(final Integer id, final String uuid, final String content, final int distance) {
+        this.id = id;
+        this.uuid = uuid;
+        this.content = content;
+        this.distance = distance;
+    }
+
+    public Integer getId() {
+        return id;
+    }
+
+    public String getUuid() {
+        return uuid;
+    }
+
+    public String getContent() {
+        return content;
+    }
+
+    /**
+     * @return number of differing bits between the SimHashes of the contents, 0 for the same words.
+     */
+    public int getDistance() {
+        return distance;
+    }
+}
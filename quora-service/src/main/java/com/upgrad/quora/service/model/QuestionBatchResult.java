@@ -0,0 +1,43 @@
+package com.upgrad.quora.service.model;
+
+/**
+ * Outcome of one question of a batch create, either the uuid of the created question or the reason it was rejected.
+ */
+public class QuestionBatchResult {
+
+    private final String uuid;
+
+    private final String errorCode;
+
+    private final String errorMessage;
+
+    private QuestionBatchResult(final String uuid, final String errorCode, final String errorMessage) {
+        this.uuid = uuid;
+        this.errorCode = errorCode;
+        this.errorMessage = errorMessage;
+    }
+
+    public static QuestionBatchResult created(final String uuid) {
+        return new QuestionBatchResult(uuid, null, null);
+    }
+
+    public static QuestionBatchResult rejected(final String errorCode, final String errorMessage) {
+        return new QuestionBatchResult(null, errorCode, errorMessage);
+    }
+
+    public boolean isCreated() {
+        return uuid != null;
+    }
+
+    public String getUuid() {
+        return uuid;
+    }
+
+    public String getErrorCode() {
+        return errorCode;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+}
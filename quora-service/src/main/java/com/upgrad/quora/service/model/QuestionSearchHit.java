@@ -0,0 +1,38 @@
+package com.upgrad.quora.service.model;
+
+/**
+ * Read model of a question matching a full-text search, with its relevance to the search.
+ */
+public class QuestionSearchHit {
+
+    private final Integer id;
+
+    private final String uuid;
+
+    private final String content;
+
+    private final float rank;
+
+    public QuestionSearchHit(final Integer id, final String uuid, final String content, final float rank) {
+        this.id = id;
+        this.uuid = uuid;
+        this.content = content;
+        this.rank = rank;
+    }
+
+    public Integer getId() {
+        return id;
+    }
+
+    public String getUuid() {
+        return uuid;
+    }
+
+    public String getContent() {
+        return content;
+    }
+
+    public float getRank() {
+        return rank;
+    }
+}
@@ -0,0 +1,48 @@
+package com.upgrad.quora.service.model;
+
+import java.time.ZonedDateTime;
+
+/**
+ * Immutable copy of a QUESTION row, safe to share between requests and threads through the question cache.
+ */
+public class QuestionSnapshot {
+
+    private final Integer id;
+
+    private final String uuid;
+
+    private final String content;
+
+    private final ZonedDateTime date;
+
+    private final Integer userId;
+
+    public QuestionSnapshot(final Integer id, final String uuid, final String content, final ZonedDateTime date,
+                            final Integer userId) {
+        this.id = id;
+        this.uuid = uuid;
+        this.content = content;
+        this.date = date;
+        this.userId = userId;
+    }
+
+    public Integer getId() {
+        return id;
+    }
+
+    public String getUuid() {
+        return uuid;
+    }
+
+    public String getContent() {
+        return content;
+    }
+
+    public ZonedDateTime getDate() {
+        return date;
+    }
+
+    public Integer getUserId() {
+        return userId;
+    }
+}
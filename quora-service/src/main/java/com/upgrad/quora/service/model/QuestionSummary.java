@@ -0,0 +1,52 @@
+package com.upgrad.quora.service.model;
+
+import java.time.ZonedDateTime;
+
+/**
+ * Read model of a question for list endpoints, selected straight from QUESTION by projection queries so that
+ * listings neither load the owning user nor put entities into the persistence context.
+ */
+public class QuestionSummary {
+
+    private final Integer id;
+
+    private final String uuid;
+
+    private final String content;
+
+    private final ZonedDateTime date;
+
+    /**
+     * Denormalized count, it lags the answers by up to the flush interval of AnswerCounts.
+     */
+    private final int answerCount;
+
+    public QuestionSummary(final Integer id, final String uuid, final String content, final ZonedDateTime date,
+                           final int answerCount) {
+        this.id = id;
+        this.uuid = uuid;
+        this.content = content;
+        this.date = date;
+        this.answerCount = answerCount;
+    }
+
+    public Integer getId() {
+        return id;
+    }
+
+    public String getUuid() {
+        return uuid;
+    }
+
+    public String getContent() {
+        return content;
+    }
+
+    public ZonedDateTime getDate() {
+        return date;
+    }
+
+    public int getAnswerCount() {
+        return answerCount;
+    }
+}